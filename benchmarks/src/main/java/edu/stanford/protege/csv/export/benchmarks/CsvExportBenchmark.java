@@ -0,0 +1,171 @@
+package edu.stanford.protege.csv.export.benchmarks;
+
+import edu.stanford.protege.csv.export.CsvExporter;
+import edu.stanford.protege.csv.export.ExportRenderer;
+import edu.stanford.protege.csv.export.OwlApiExportRenderer;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link CsvExporter#export()} on a synthetic ontology, with entity rendering on and off, superclasses
+ * on and off, and a varying number of property columns. Columns alternate between annotation properties and object
+ * properties. The size and shape of the ontology are parameters too, and can be varied with the JMH {@code -p} option.
+ * The ontology is generated in memory once per trial; only the CSV file is written to disk.
+ * <br>
+ * Exports reuse the indexes of the asserted superclasses and of the imports closure axioms for as long as the
+ * ontology is unchanged. With {@code coldIndexes} set, the ontology is changed before each invocation, outside of
+ * the measured time, so that each export rebuilds these indexes as the first export after an edit does. Otherwise
+ * only the first export of a trial builds them, and the measured time is that of the rows alone.
+ * <br>
+ * Exports with a {@code parallelism} above 1 render rows on several threads. With {@code lockedRenderer} set, the
+ * renderer takes a lock for each rendering, as the Protégé renderer does, which shows how far parallel exports are
+ * held back by a renderer that is not thread-safe.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvExportBenchmark {
+
+    @Param({"1000", "10000"})
+    private int classCount;
+
+    @Param({"8"})
+    private int hierarchyDepth;
+
+    @Param({"3"})
+    private int annotationsPerEntity;
+
+    @Param({"2"})
+    private int restrictionsPerClass;
+
+    @Param({"1000"})
+    private int individualCount;
+
+    @Param({"false", "true"})
+    private boolean useCurrentRendering;
+
+    @Param({"false", "true"})
+    private boolean includeSuperclasses;
+
+    @Param({"1", "10", "50"})
+    private int propertyColumns;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    @Param({"false", "true"})
+    private boolean lockedRenderer;
+
+    @Param({"true", "false"})
+    private boolean coldIndexes;
+
+    private OWLOntology ont;
+    private OWLAxiom changeAxiom;
+    private CsvExporter exporter;
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OWLOntologyCreationException, IOException {
+        SyntheticOntologyGenerator generator = new SyntheticOntologyGenerator()
+                .setClassCount(classCount)
+                .setHierarchyDepth(hierarchyDepth)
+                .setAnnotationsPerEntity(annotationsPerEntity)
+                .setRestrictionsPerClass(restrictionsPerClass)
+                .setIndividualCount(individualCount)
+                .setAnnotationPropertyCount(Math.max(1, (propertyColumns + 1) / 2))
+                .setObjectPropertyCount(Math.max(1, propertyColumns / 2));
+        ont = generator.generate();
+        OWLDataFactory df = ont.getOWLOntologyManager().getOWLDataFactory();
+        changeAxiom = df.getOWLDeclarationAxiom(df.getOWLClass(IRI.create("urn:csv-export-benchmark:Change")));
+        outputFile = File.createTempFile("csv-export-benchmark", ".csv");
+        ExportRenderer renderer = new OwlApiExportRenderer(ont);
+        exporter = CsvExporter.builder(ont, (lockedRenderer ? new LockedRenderer(renderer) : renderer), outputFile)
+                .setOutputProperties(getClasses(ont))
+                .setProperties(getPropertyColumns(ont, generator))
+                .setIncludeHeaders(true)
+                .setIncludeEntityTypes(true)
+                .setUseCurrentRendering(useCurrentRendering)
+                .setIncludeSuperclasses(includeSuperclasses)
+                .setParallelism(parallelism)
+                .build();
+    }
+
+    /**
+     * Add an axiom to the ontology and remove it again, which leaves the ontology as it was but invalidates the
+     * indexes cached for it
+     */
+    @Setup(Level.Invocation)
+    public void invalidateIndexes() {
+        if(coldIndexes) {
+            OWLOntologyManager manager = ont.getOWLOntologyManager();
+            manager.addAxiom(ont, changeAxiom);
+            manager.removeAxiom(ont, changeAxiom);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(!outputFile.delete()) {
+            outputFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        exporter.export();
+    }
+
+    /**
+     * Renderer that renders under a lock, as renderers that are not thread-safe must
+     */
+    private static final class LockedRenderer implements ExportRenderer {
+        private final ExportRenderer renderer;
+
+        LockedRenderer(ExportRenderer renderer) {
+            this.renderer = renderer;
+        }
+
+        @Override
+        public synchronized String renderEntity(OWLEntity entity) {
+            return renderer.renderEntity(entity);
+        }
+
+        @Override
+        public synchronized String renderObject(OWLObject object) {
+            return renderer.renderObject(object);
+        }
+    }
+
+    private static List<OWLEntity> getClasses(OWLOntology ont) {
+        List<OWLEntity> classes = new ArrayList<>(ont.getClassesInSignature(Imports.EXCLUDED));
+        Collections.sort(classes);
+        return classes;
+    }
+
+    private List<OWLEntity> getPropertyColumns(OWLOntology ont, SyntheticOntologyGenerator generator) {
+        List<OWLEntity> annotationProperties = new ArrayList<>(generator.getAnnotationProperties(ont.getOWLOntologyManager().getOWLDataFactory()));
+        List<OWLEntity> objectProperties = new ArrayList<>(ont.getObjectPropertiesInSignature(Imports.EXCLUDED));
+        Collections.sort(objectProperties);
+        List<OWLEntity> columns = new ArrayList<>(propertyColumns);
+        for(int i = 0; columns.size() < propertyColumns; i++) {
+            List<OWLEntity> source = (i % 2 == 0 ? annotationProperties : objectProperties);
+            columns.add(source.get((i / 2) % source.size()));
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,161 @@
+package edu.stanford.protege.csv.export.benchmarks;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Generator of synthetic in-memory ontologies for benchmarking exports. A generated ontology has a class hierarchy
+ * of the given depth, rooted at a single class; each class has a label and further annotations, and existential
+ * restrictions on object properties with random named fillers. Individuals are asserted to be instances of random
+ * classes and related to each other by object property assertions. Generation is deterministic for a given seed.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class SyntheticOntologyGenerator {
+    public static final String NAMESPACE = "http://example.org/synthetic#";
+    private int classCount = 10000;
+    private int hierarchyDepth = 8;
+    private int annotationsPerEntity = 3;
+    private int restrictionsPerClass = 2;
+    private int individualCount = 1000;
+    private int annotationPropertyCount = 25;
+    private int objectPropertyCount = 25;
+    private long seed = 42;
+
+    public SyntheticOntologyGenerator setClassCount(int classCount) {
+        this.classCount = classCount;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setHierarchyDepth(int hierarchyDepth) {
+        this.hierarchyDepth = hierarchyDepth;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setAnnotationsPerEntity(int annotationsPerEntity) {
+        this.annotationsPerEntity = annotationsPerEntity;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setRestrictionsPerClass(int restrictionsPerClass) {
+        this.restrictionsPerClass = restrictionsPerClass;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setIndividualCount(int individualCount) {
+        this.individualCount = individualCount;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setAnnotationPropertyCount(int annotationPropertyCount) {
+        this.annotationPropertyCount = annotationPropertyCount;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setObjectPropertyCount(int objectPropertyCount) {
+        this.objectPropertyCount = objectPropertyCount;
+        return this;
+    }
+
+    public SyntheticOntologyGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generate an ontology in a new ontology manager
+     *
+     * @return Generated ontology
+     * @throws OWLOntologyCreationException if the ontology could not be created
+     */
+    public OWLOntology generate() throws OWLOntologyCreationException {
+        checkArgument(classCount > 0, "Class count must be positive: %s", classCount);
+        checkArgument(hierarchyDepth > 0, "Hierarchy depth must be positive: %s", hierarchyDepth);
+        checkArgument(annotationPropertyCount > 0 && objectPropertyCount > 0, "Property counts must be positive");
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory df = manager.getOWLDataFactory();
+        OWLOntology ont = manager.createOntology(IRI.create("http://example.org/synthetic"));
+        Random random = new Random(seed);
+        Set<OWLAxiom> axioms = new HashSet<>();
+
+        List<OWLAnnotationProperty> annotationProperties = getAnnotationProperties(df);
+        List<OWLObjectProperty> objectProperties = new ArrayList<>(objectPropertyCount);
+        for(int i = 0; i < objectPropertyCount; i++) {
+            OWLObjectProperty property = df.getOWLObjectProperty(IRI.create(NAMESPACE + "hasPart" + i));
+            objectProperties.add(property);
+            axioms.add(df.getOWLDeclarationAxiom(property));
+        }
+
+        // class i sits at depth 1 + (i - 1) % depth under a random class of the level above
+        List<OWLClass> classes = new ArrayList<>(classCount);
+        List<List<OWLClass>> levels = new ArrayList<>();
+        for(int i = 0; i < classCount; i++) {
+            OWLClass cls = df.getOWLClass(IRI.create(NAMESPACE + "Class" + i));
+            classes.add(cls);
+            axioms.add(df.getOWLDeclarationAxiom(cls));
+            int level = (i == 0 ? 0 : 1 + (i - 1) % hierarchyDepth);
+            if(levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(cls);
+            if(level > 0) {
+                List<OWLClass> parents = levels.get(level - 1);
+                axioms.add(df.getOWLSubClassOfAxiom(cls, parents.get(random.nextInt(parents.size()))));
+            }
+            addAnnotations(cls.getIRI(), "Class " + i, annotationProperties, df, random, axioms);
+        }
+        for(OWLClass cls : classes) {
+            for(int j = 0; j < restrictionsPerClass; j++) {
+                OWLObjectProperty property = objectProperties.get(random.nextInt(objectProperties.size()));
+                OWLClass filler = classes.get(random.nextInt(classes.size()));
+                axioms.add(df.getOWLSubClassOfAxiom(cls, df.getOWLObjectSomeValuesFrom(property, filler)));
+            }
+        }
+
+        List<OWLNamedIndividual> individuals = new ArrayList<>(individualCount);
+        for(int i = 0; i < individualCount; i++) {
+            OWLNamedIndividual ind = df.getOWLNamedIndividual(IRI.create(NAMESPACE + "individual" + i));
+            individuals.add(ind);
+            axioms.add(df.getOWLDeclarationAxiom(ind));
+            axioms.add(df.getOWLClassAssertionAxiom(classes.get(random.nextInt(classes.size())), ind));
+            addAnnotations(ind.getIRI(), "individual " + i, annotationProperties, df, random, axioms);
+        }
+        for(OWLNamedIndividual ind : individuals) {
+            for(int j = 0; j < restrictionsPerClass; j++) {
+                OWLObjectProperty property = objectProperties.get(random.nextInt(objectProperties.size()));
+                OWLNamedIndividual object = individuals.get(random.nextInt(individuals.size()));
+                axioms.add(df.getOWLObjectPropertyAssertionAxiom(property, ind, object));
+            }
+        }
+        manager.addAxioms(ont, axioms);
+        return ont;
+    }
+
+    /**
+     * Get the annotation properties of generated ontologies: rdfs:label first, followed by generated properties
+     */
+    public List<OWLAnnotationProperty> getAnnotationProperties(OWLDataFactory df) {
+        List<OWLAnnotationProperty> properties = new ArrayList<>(annotationPropertyCount);
+        properties.add(df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI()));
+        for(int i = 1; i < annotationPropertyCount; i++) {
+            properties.add(df.getOWLAnnotationProperty(IRI.create(NAMESPACE + "note" + i)));
+        }
+        return properties;
+    }
+
+    private void addAnnotations(IRI subject, String label, List<OWLAnnotationProperty> properties, OWLDataFactory df,
+                                Random random, Set<OWLAxiom> axioms) {
+        for(int j = 0; j < annotationsPerEntity; j++) {
+            OWLAnnotationProperty property = properties.get(j == 0 || properties.size() == 1 ? 0 : 1 + random.nextInt(properties.size() - 1));
+            String value = (j == 0 ? label : "Note " + j + " on " + label + ": " + Long.toHexString(random.nextLong()));
+            axioms.add(df.getOWLAnnotationAssertionAxiom(property, subject, df.getOWLLiteral(value)));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Transitive closure of a class hierarchy: the ancestors of every class, computed once for the whole hierarchy.
+ * Classes are numbered in topological order, parents before children, and the ancestors of each class are
+ * computed from those of its parents, which are already known, so no part of the hierarchy is walked more than once.
+ * <br>
+ * Closures are shared rather than copied: the closure of a class refers to the closure of one of its parents (the
+ * largest one) and only lists the ancestors that closure lacks. A class with a single parent thus adds a single id
+ * to the closure of its parent, and the memory needed for a tree-shaped hierarchy is linear in the number of classes.
+ * Classes with several parents list the ancestors of their other parents that are not ancestors of the first.
+ * <br>
+ * Asserted hierarchies may contain cycles. An edge that closes a cycle is ignored, so the classes of a cycle get the
+ * ancestors found along the order in which the cycle was walked. Instances are immutable and thread-safe.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+final class AncestorClosure {
+    private static final Closure EMPTY = new Closure(null, new int[0]);
+    private final Map<OWLClass, Integer> ids = new HashMap<>();
+    private final List<OWLClass> classes = new ArrayList<>();
+    private final List<Closure> closures = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param roots Classes whose ancestors are needed; the closure covers these classes and all of their ancestors
+     * @param parents   Function giving the direct parents of a class
+     */
+    AncestorClosure(Collection<OWLClass> roots, Function<OWLClass, ? extends Collection<OWLClass>> parents) {
+        checkNotNull(parents);
+        BitSet marks = new BitSet();
+        Deque<Visit> stack = new ArrayDeque<>();
+        Set<OWLClass> onStack = new HashSet<>();
+        for(OWLClass root : checkNotNull(roots)) {
+            if(ids.containsKey(root)) {
+                continue;
+            }
+            stack.push(new Visit(root, parents.apply(root)));
+            onStack.add(root);
+            while(!stack.isEmpty()) {
+                Visit visit = stack.peek();
+                if(visit.parents.hasNext()) {
+                    OWLClass parent = visit.parents.next();
+                    if(!ids.containsKey(parent) && onStack.add(parent)) {
+                        stack.push(new Visit(parent, parents.apply(parent)));
+                    }
+                } else {
+                    stack.pop();
+                    onStack.remove(visit.cls);
+                    ids.put(visit.cls, classes.size());
+                    classes.add(visit.cls);
+                    closures.add(computeClosure(visit.cls, visit.parentList, marks));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the closure of a class whose parents, except those on a cycle through the class, have their closures
+     */
+    private Closure computeClosure(OWLClass cls, Collection<OWLClass> parents, BitSet marks) {
+        int base = -1;
+        List<Integer> parentIds = new ArrayList<>(parents.size());
+        for(OWLClass parent : parents) {
+            Integer id = ids.get(parent);
+            if(id != null && !parent.equals(cls)) {
+                parentIds.add(id);
+                if(base < 0 || closures.get(id).size > closures.get(base).size) {
+                    base = id;
+                }
+            }
+        }
+        if(base < 0) {
+            return EMPTY;
+        }
+        Closure baseClosure = closures.get(base);
+        if(parentIds.size() == 1) {
+            return new Closure(baseClosure, new int[]{base});
+        }
+        // mark the base closure, then collect the ancestors of the other parents that are not marked yet
+        baseClosure.forEach(marks::set);
+        marks.set(base);
+        int[] extra = new int[8];
+        int n = 0;
+        for(int parentId : parentIds) {
+            if(parentId == base) {
+                continue;
+            }
+            int[] candidates = closures.get(parentId).toArray(parentId);
+            for(int candidate : candidates) {
+                if(!marks.get(candidate)) {
+                    marks.set(candidate);
+                    if(n == extra.length) {
+                        extra = Arrays.copyOf(extra, n * 2);
+                    }
+                    extra[n++] = candidate;
+                }
+            }
+        }
+        baseClosure.forEach(marks::clear);
+        marks.clear(base);
+        for(int i = 0; i < n; i++) {
+            marks.clear(extra[i]);
+        }
+        int[] own = Arrays.copyOf(extra, n + 1);
+        own[n] = base;
+        return new Closure(baseClosure, own);
+    }
+
+    /**
+     * Get the ancestors of the given class
+     *
+     * @param cls   OWL class
+     * @return List of ancestors, in topological order (every class after its own ancestors), empty if the class has
+     * no ancestors or is not covered by the closure
+     */
+    List<OWLClass> getAncestors(OWLClass cls) {
+        Integer id = ids.get(cls);
+        if(id == null) {
+            return Collections.emptyList();
+        }
+        int[] ancestorIds = closures.get(id).toArray(-1);
+        Arrays.sort(ancestorIds);
+        List<OWLClass> ancestors = new ArrayList<>(ancestorIds.length);
+        for(int ancestorId : ancestorIds) {
+            ancestors.add(classes.get(ancestorId));
+        }
+        return ancestors;
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    private static final class Visit {
+        private final OWLClass cls;
+        private final Collection<OWLClass> parentList;
+        private final Iterator<OWLClass> parents;
+
+        Visit(OWLClass cls, Collection<OWLClass> parents) {
+            this.cls = cls;
+            this.parentList = parents;
+            this.parents = parents.iterator();
+        }
+    }
+
+    /**
+     * Ancestor ids of a class: the ids of a shared base closure, if any, followed by the ids of this closure
+     */
+    private static final class Closure {
+        private final Closure base;
+        private final int[] ids;
+        private final int size;
+
+        Closure(Closure base, int[] ids) {
+            this.base = base;
+            this.ids = ids;
+            this.size = (base != null ? base.size : 0) + ids.length;
+        }
+
+        void forEach(IntConsumer action) {
+            for(Closure c = this; c != null; c = c.base) {
+                for(int id : c.ids) {
+                    action.accept(id);
+                }
+            }
+        }
+
+        /**
+         * Copy the ids of the closure into an array, followed by the given id unless it is negative
+         */
+        int[] toArray(int extra) {
+            int[] array = new int[size + (extra >= 0 ? 1 : 0)];
+            int i = 0;
+            for(Closure c = this; c != null; c = c.base) {
+                System.arraycopy(c.ids, 0, array, i, c.ids.length);
+                i += c.ids.length;
+            }
+            if(extra >= 0) {
+                array[i] = extra;
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the values of a fixed set of annotation properties, grouped by annotation subject. The index is
+ * built in a single pass over the annotation assertions of an ontology, so that looking up the values of
+ * several annotation columns for an entity does not require rescanning that entity's annotations once per column.
+ * The values of individual subjects can be re-read after their annotations change, see {@link #update}, in which
+ * case the index must be confined to one thread.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class AnnotationValueIndex {
+    private final Map<IRI, Map<OWLAnnotationProperty, List<String>>> index = new HashMap<>();
+    private final Set<OWLAnnotationProperty> selected = new HashSet<>();
+
+    /**
+     * Constructor
+     *
+     * @param ont   OWL ontology whose annotation assertions should be indexed
+     * @param properties    List of properties selected for export; those that are not annotation properties are ignored
+     */
+    AnnotationValueIndex(OWLOntology ont, Collection<OWLEntity> properties) {
+        checkNotNull(ont);
+        for(OWLEntity property : checkNotNull(properties)) {
+            if(property.isOWLAnnotationProperty()) {
+                selected.add(property.asOWLAnnotationProperty());
+            }
+        }
+        if(!selected.isEmpty()) {
+            for(OWLAnnotationAssertionAxiom ax : ont.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+                add(ax);
+            }
+        }
+    }
+
+    /**
+     * Re-read the values of the given subjects from the annotation assertions of the given ontology, after these
+     * have changed. This takes time in proportion to the annotations of the subjects, not to the size of the ontology.
+     *
+     * @param ont   OWL ontology from which the index was built
+     * @param subjects  Annotation subject IRIs
+     */
+    void update(OWLOntology ont, Collection<IRI> subjects) {
+        checkNotNull(ont);
+        if(selected.isEmpty()) {
+            return;
+        }
+        for(IRI subject : checkNotNull(subjects)) {
+            index.remove(subject);
+            for(OWLAnnotationAssertionAxiom ax : ont.getAnnotationAssertionAxioms(subject)) {
+                add(ax);
+            }
+        }
+    }
+
+    private void add(OWLAnnotationAssertionAxiom ax) {
+        if(!selected.contains(ax.getProperty()) || !(ax.getSubject() instanceof IRI)) {
+            return;
+        }
+        Optional<String> value = getValue(ax.getValue());
+        if(value.isPresent()) {
+            index.computeIfAbsent((IRI) ax.getSubject(), iri -> new HashMap<>(4))
+                    .computeIfAbsent(ax.getProperty(), p -> new ArrayList<>(2))
+                    .add(value.get());
+        }
+    }
+
+    private Optional<String> getValue(OWLAnnotationValue annValue) {
+        String value = null;
+        if(annValue instanceof IRI) {
+            value = annValue.toString();
+        } else if(annValue instanceof OWLLiteral) {
+            value = ((OWLLiteral) annValue).getLiteral();
+        } else if(annValue instanceof OWLAnonymousIndividual) {
+            value = "AnonymousIndividual-" + ((OWLAnonymousIndividual)annValue).getID().getID();
+        }
+        return Optional.ofNullable(value);
+    }
+
+    /**
+     * Get the indexed values of the given annotation property for the given subject
+     *
+     * @param subject   Annotation subject IRI
+     * @param property  Annotation property
+     * @return List of values, empty if there are none or if the property was not selected when building the index
+     */
+    List<String> getValues(IRI subject, OWLAnnotationProperty property) {
+        Map<OWLAnnotationProperty, List<String>> subjectValues = index.get(subject);
+        if(subjectValues == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = subjectValues.get(property);
+        return (values != null ? values : Collections.emptyList());
+    }
+}
@@ -0,0 +1,148 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.*;
+import org.semanticweb.owlapi.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the asserted direct superclasses of the classes in the imports closure of an ontology. A named class
+ * is a direct superclass of another if it is asserted as its superclass, or as a conjunct of an intersection that
+ * is asserted as its superclass or equivalent class. Classes asserted to be equivalent to each other share their
+ * superclasses: the superclasses of a class are those of all of its named equivalents, together with the named
+ * equivalents of each superclass, and never include the class or its equivalents. Classes without asserted
+ * superclasses have owl:Thing as their only superclass. This corresponds to the told hierarchy of the OWL API
+ * structural reasoner, which merges named equivalents into one node, except that classes in asserted subclass
+ * cycles are not merged.
+ * <br>
+ * Indexes are cached per ontology and reused by later exports for as long as none of the ontologies in the imports
+ * closure has changed, and the closure is made of the same ontology objects (see {@link OntologyChangeTracker}).
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+final class AssertedSuperclassIndex {
+    private static final Logger logger = LoggerFactory.getLogger(AssertedSuperclassIndex.class.getName());
+    private static final Map<OWLOntology, AssertedSuperclassIndex> cache = new MapMaker().weakKeys().makeMap();
+    private final ImmutableSetMultimap<OWLClass, OWLClass> superclasses;
+    private final Map<OWLClass, Set<OWLClass>> equivalents;
+    private final Set<OWLClass> thing, top;
+    private final Map<Long, Long> changeCounts;
+
+    private AssertedSuperclassIndex(OWLOntology ont, Map<Long, Long> changeCounts) {
+        this.changeCounts = changeCounts;
+        OWLClass owlThing = ont.getOWLOntologyManager().getOWLDataFactory().getOWLThing();
+        this.thing = Collections.singleton(owlThing);
+        SetMultimap<OWLClass, OWLClass> told = HashMultimap.create();
+        equivalents = new HashMap<>();
+        for(OWLOntology o : ont.getImportsClosure()) {
+            for(OWLSubClassOfAxiom ax : o.getAxioms(AxiomType.SUBCLASS_OF)) {
+                if(!ax.getSubClass().isAnonymous()) {
+                    addNamedConjuncts(told, ax.getSubClass().asOWLClass(), ax.getSuperClass());
+                }
+            }
+            for(OWLEquivalentClassesAxiom ax : o.getAxioms(AxiomType.EQUIVALENT_CLASSES)) {
+                Set<OWLClass> namedClasses = ax.getNamedClasses();
+                if(namedClasses.size() > 1) {
+                    mergeEquivalents(equivalents, namedClasses);
+                }
+                for(OWLClass cls : namedClasses) {
+                    for(OWLClassExpression ce : ax.getClassExpressionsMinus(cls)) {
+                        if(ce instanceof OWLObjectIntersectionOf) {
+                            addNamedConjuncts(told, cls, ce);
+                        }
+                    }
+                }
+            }
+        }
+        this.top = equivalents.getOrDefault(owlThing, thing);
+        ImmutableSetMultimap.Builder<OWLClass, OWLClass> builder = ImmutableSetMultimap.builder();
+        for(OWLClass cls : Sets.union(told.keySet(), equivalents.keySet())) {
+            Set<OWLClass> node = equivalents.getOrDefault(cls, Collections.singleton(cls));
+            for(OWLClass member : node) {
+                for(OWLClass parent : told.get(member)) {
+                    if(!node.contains(parent)) {
+                        builder.putAll(cls, equivalents.getOrDefault(parent, Collections.singleton(parent)));
+                    }
+                }
+            }
+        }
+        superclasses = builder.build();
+    }
+
+    private static void addNamedConjuncts(SetMultimap<OWLClass, OWLClass> told, OWLClass cls, OWLClassExpression ce) {
+        for(OWLClassExpression conjunct : ce.asConjunctSet()) {
+            if(!conjunct.isAnonymous() && !conjunct.equals(cls)) {
+                told.put(cls, conjunct.asOWLClass());
+            }
+        }
+    }
+
+    /**
+     * Merge the given classes, which are equivalent to each other, and all classes known to be equivalent to any of
+     * them into one set, shared by all the classes in it
+     */
+    private static void mergeEquivalents(Map<OWLClass, Set<OWLClass>> equivalents, Set<OWLClass> classes) {
+        Set<OWLClass> merged = new HashSet<>(classes);
+        for(OWLClass cls : classes) {
+            Set<OWLClass> known = equivalents.get(cls);
+            if(known != null) {
+                merged.addAll(known);
+            }
+        }
+        for(OWLClass cls : merged) {
+            equivalents.put(cls, merged);
+        }
+    }
+
+    /**
+     * Get the asserted superclass index of the given ontology, building it if there is no index
+     * for the ontology yet or if its imports closure has changed since the index was built
+     *
+     * @param ont   OWL ontology
+     * @return Asserted superclass index
+     */
+    static synchronized AssertedSuperclassIndex get(OWLOntology ont) {
+        checkNotNull(ont);
+        Map<Long, Long> changeCounts = OntologyChangeTracker.get(ont.getOWLOntologyManager()).getImportsClosureChangeCounts(ont);
+        AssertedSuperclassIndex index = cache.get(ont);
+        if(index == null || !index.changeCounts.equals(changeCounts)) {
+            long start = System.currentTimeMillis();
+            index = new AssertedSuperclassIndex(ont, changeCounts);
+            cache.put(ont, index);
+            logger.info("Built asserted superclass index of {} classes in {} ms", index.superclasses.keySet().size(),
+                    System.currentTimeMillis() - start);
+        }
+        return index;
+    }
+
+    /**
+     * Get the classes asserted to be equivalent to the given class, whose superclasses the class shares
+     *
+     * @param cls   OWL class
+     * @return Set of the named equivalents of the class, including the class itself
+     */
+    Set<OWLClass> getEquivalents(OWLClass cls) {
+        return Collections.unmodifiableSet(equivalents.getOrDefault(cls, Collections.singleton(cls)));
+    }
+
+    /**
+     * Get the asserted direct superclasses of the given class
+     *
+     * @param cls   OWL class
+     * @return Set of direct superclasses, which is {owl:Thing} for classes without asserted superclasses, and empty
+     * for owl:Thing and the classes equivalent to it
+     */
+    Set<OWLClass> getSuperclasses(OWLClass cls) {
+        Set<OWLClass> parents = superclasses.get(cls);
+        if(parents.isEmpty() && !top.contains(cls)) {
+            return thing;
+        }
+        return parents;
+    }
+}
@@ -0,0 +1,162 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writer that encodes characters into a large reusable direct byte buffer and writes the buffer to a channel
+ * whenever it fills up. For charsets in which ASCII characters are encoded as single bytes of the same value
+ * (UTF-8, US-ASCII and ISO-8859-1), runs of ASCII characters are copied into the buffer directly and only other
+ * characters go through the charset encoder. Unmappable or malformed characters are replaced, as with
+ * {@link java.io.OutputStreamWriter}.
+ * <br>
+ * Like other writers, instances are not meant to be shared between threads without external synchronization.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ChannelWriter extends Writer {
+    private static final int ASCII_LIMIT = 0x80;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final boolean asciiCompatible;
+    private final char[] scratch = new char[8192];
+    private char pendingHighSurrogate = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param channel   Channel to write to, which is closed when this writer is closed
+     * @param charset   Charset of the written bytes
+     * @param bufferSize    Size in bytes of the buffer
+     */
+    ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+        this.channel = checkNotNull(channel);
+        checkArgument(bufferSize >= 16, "Buffer size must be at least 16 bytes: %s", bufferSize);
+        this.encoder = checkNotNull(charset).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.asciiCompatible = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        int end = off + len;
+        while(off < end) {
+            if(pendingHighSurrogate != 0) {
+                // a surrogate pair split across writes: encode it together with the next character
+                CharBuffer pair = CharBuffer.wrap(new char[]{pendingHighSurrogate, cbuf[off++]});
+                pendingHighSurrogate = 0;
+                encode(pair);
+            } else if(asciiCompatible) {
+                int limit = Math.min(end, off + buffer.remaining());
+                while(off < limit && cbuf[off] < ASCII_LIMIT) {
+                    buffer.put((byte) cbuf[off++]);
+                }
+                if(!buffer.hasRemaining()) {
+                    flushBuffer();
+                } else if(off < end && cbuf[off] >= ASCII_LIMIT) {
+                    int runEnd = off + 1;
+                    while(runEnd < end && cbuf[runEnd] >= ASCII_LIMIT) {
+                        runEnd++;
+                    }
+                    encode(CharBuffer.wrap(cbuf, off, runEnd - off));
+                    off = runEnd;
+                }
+            } else {
+                encode(CharBuffer.wrap(cbuf, off, end - off));
+                off = end;
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        while(off < end) {
+            int n = Math.min(end - off, scratch.length);
+            str.getChars(off, off + n, scratch, 0);
+            write(scratch, 0, n);
+            off += n;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        scratch[0] = (char) c;
+        write(scratch, 0, 1);
+    }
+
+    /**
+     * Write out the buffered bytes. The bytes are not forced to the storage device.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        try {
+            CharBuffer rest = (pendingHighSurrogate != 0 ? CharBuffer.wrap(new char[]{pendingHighSurrogate}) : CharBuffer.allocate(0));
+            pendingHighSurrogate = 0;
+            while(encoder.encode(rest, buffer, true).isOverflow()) {
+                flushBuffer();
+            }
+            while(encoder.flush(buffer).isOverflow()) {
+                flushBuffer();
+            }
+            flushBuffer();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        while(true) {
+            CoderResult result = encoder.encode(in, buffer, false);
+            if(result.isOverflow()) {
+                flushBuffer();
+            } else if(result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException(); // not reached, errors are replaced
+            }
+        }
+        if(in.hasRemaining()) {
+            pendingHighSurrogate = in.get(); // the encoder waits for the low surrogate of the last character
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed) {
+            throw new IOException("Writer closed");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.ImmutableList;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decomposes class expressions into the (property, filler) pairs of their restrictions. A restriction is found
+ * either as the expression itself or as an operand of an intersection, at any depth of nesting, so that for example
+ * {@code A and (p some B) and (q value c and (r some C))} yields the pairs of {@code p}, {@code q} and {@code r}.
+ * Unions and complements are not descended into, since their operands do not hold for every instance of the class.
+ * <br>
+ * Decompositions are cached per class expression. OWLAPI shares structurally equal expressions between axioms, and
+ * the same expression is typically found in the axioms of many classes, so each distinct expression is analysed
+ * once for as long as the decomposer is kept. Instances are thread-safe.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ClassExpressionDecomposer {
+    private final Map<OWLClassExpression, List<Restriction>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Get the restrictions of the given class expression
+     *
+     * @param ce    Class expression
+     * @return List of restrictions, in the order in which they occur in the expression, empty if there are none
+     */
+    List<Restriction> decompose(OWLClassExpression ce) {
+        checkNotNull(ce);
+        if(!ce.isAnonymous()) {
+            return ImmutableList.of();
+        }
+        List<Restriction> restrictions = cache.get(ce);
+        if(restrictions == null) {
+            restrictions = analyse(ce);
+            cache.putIfAbsent(ce, restrictions);
+        }
+        return restrictions;
+    }
+
+    private static List<Restriction> analyse(OWLClassExpression ce) {
+        ImmutableList.Builder<Restriction> builder = ImmutableList.builder();
+        addRestrictions(ce, new OwlClassExpressionVisitor(), builder);
+        return builder.build();
+    }
+
+    private static void addRestrictions(OWLClassExpression ce, OwlClassExpressionVisitor visitor, ImmutableList.Builder<Restriction> builder) {
+        if(ce instanceof OWLObjectIntersectionOf) {
+            for(OWLClassExpression operand : ((OWLObjectIntersectionOf) ce).getOperands()) {
+                addRestrictions(operand, visitor, builder);
+            }
+            return;
+        }
+        ce.accept(visitor);
+        Optional<OWLEntity> property = visitor.getProperty();
+        Optional<OWLObject> filler = visitor.getFiller();
+        if(property.isPresent() && filler.isPresent()) {
+            builder.add(new Restriction(property.get(), filler.get()));
+        }
+    }
+
+    /**
+     * A property restricted by a class expression, together with the filler of the restriction
+     */
+    static final class Restriction {
+        private final OWLEntity property;
+        private final OWLObject filler;
+
+        Restriction(OWLEntity property, OWLObject filler) {
+            this.property = checkNotNull(property);
+            this.filler = checkNotNull(filler);
+        }
+
+        OWLEntity getProperty() {
+            return property;
+        }
+
+        OWLObject getFiller() {
+            return filler;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import org.semanticweb.owlapi.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.swing.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keeps the output file of a {@link CsvExporter} up to date with the ontology. After an initial export, the watcher
+ * listens for ontology changes, works out which rows are affected by them, and re-renders only those rows before
+ * rewriting the file from its cache of rendered rows. A row is affected by a change if the change is about the
+ * entity of the row, or if it changes the annotations of an entity whose rendering appears in the row (for example
+ * the label of a restriction filler or a superclass).
+ * <br>
+ * Changes are processed in batches on a background thread, a short delay after the last change of a batch
+ * was applied. Changes that cannot be attributed to specific entities, such as changes to imports or to the
+ * rendering of the header row, cause all rows to be re-rendered.
+ * <br>
+ * Protégé applies edits, and expects its renderers to be called, on the event dispatch thread. The rows of a batch
+ * are therefore read from the ontology and rendered there, where no edit can be half applied, and only the output
+ * file is written on the background thread. Outside of Protégé, a watched ontology should be edited on the event
+ * dispatch thread too.
+ * <br>
+ * Rows are rendered with a single export context, which is kept up to date with each batch rather than rebuilt. A
+ * batch of annotation changes costs rendering time in proportion to the changed entities and affected rows. A batch
+ * that changes the asserted hierarchy, or the property assertions of exported property columns, also rebuilds the
+ * indexes that cover the whole ontology, as an export does.
+ * <br>
+ * Only rendering is incremental: the output file is rewritten in full from the cached rows after every batch, see
+ * {@link CsvExporter#writeRenderedRows(Iterable)}. Patching the changed rows in place would need every later row to
+ * be moved whenever a row changes length, cannot be done in compressed output, and would let readers see a file
+ * that is half updated, which the atomic replacement of the file rules out.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class CsvExportWatcher implements OWLOntologyChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(CsvExportWatcher.class.getName());
+    public static final long DEFAULT_DELAY_MILLIS = 500;
+    private final CsvExporter exporter;
+    private final OWLOntology ont;
+    private final List<OWLEntity> entities;
+    private final long delayMillis;
+    private final Set<IRI> headerIris = new HashSet<>();
+    private final ScheduledExecutorService executor;
+
+    // accessed only from the event dispatch thread
+    private CsvExporter.ExportContext context;
+
+    // accessed only from the executor thread, after start()
+    private final List<String> rows = new ArrayList<>();
+    private final List<Set<IRI>> rowDependencies = new ArrayList<>();
+    private final SetMultimap<IRI, Integer> dependentRows = HashMultimap.create();
+
+    // guarded by this
+    private Set<IRI> pendingIris = new HashSet<>();
+    private Set<AxiomType<?>> pendingAxiomTypes = new HashSet<>();
+    private boolean pendingFullRefresh = false, started = false, refreshScheduled = false;
+
+    /**
+     * Package-private constructor. Use {@link CsvExporter#watch()}, which checks that the export can be watched
+     *
+     * @param exporter  CSV exporter whose output should be kept up to date
+     */
+    CsvExportWatcher(CsvExporter exporter) {
+        this(exporter, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Package-private constructor. Use {@link CsvExporter#watch()}, which checks that the export can be watched
+     *
+     * @param exporter  CSV exporter whose output should be kept up to date
+     * @param delayMillis   Delay in milliseconds between a change and the update of the output file, during which further changes are batched
+     */
+    CsvExportWatcher(CsvExporter exporter, long delayMillis) {
+        this.exporter = checkNotNull(exporter);
+        this.ont = exporter.getOntology();
+        this.entities = Lists.newArrayList(exporter.getResults());
+        this.delayMillis = delayMillis;
+        for(OWLEntity property : exporter.getProperties()) {
+            headerIris.add(property.getIRI());
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CSV export watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Export all rows and start listening for ontology changes. May be called on the event dispatch thread, where the
+     * rows are then rendered directly.
+     *
+     * @throws IOException if the output file could not be written
+     */
+    public synchronized void start() throws IOException {
+        checkState(!started, "Watcher already started");
+        started = true;
+        List<CsvExporter.RenderedRow> rendered = onEventDispatchThread(this::renderAll);
+        try {
+            executor.submit(() -> {
+                writeAll(rendered);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        }
+        ont.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * Stop listening for ontology changes. Pending changes are not written to the output file.
+     */
+    public synchronized void stop() {
+        ont.getOWLOntologyManager().removeOntologyChangeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void ontologiesChanged(@Nonnull List<? extends OWLOntologyChange> changes) throws OWLException {
+        Set<OWLOntology> importsClosure = ont.getImportsClosure();
+        Set<IRI> changedIris = new HashSet<>();
+        Set<AxiomType<?>> changedAxiomTypes = new HashSet<>();
+        boolean fullRefresh = false;
+        for(OWLOntologyChange change : changes) {
+            if(!importsClosure.contains(change.getOntology())) {
+                continue;
+            }
+            if(!change.isAxiomChange()) {
+                fullRefresh = true; // imports, ontology annotations or ontology ID
+                continue;
+            }
+            OWLAxiom axiom = change.getAxiom();
+            changedAxiomTypes.add(axiom.getAxiomType());
+            if(axiom instanceof OWLAnnotationAssertionAxiom) {
+                OWLAnnotationSubject subject = ((OWLAnnotationAssertionAxiom) axiom).getSubject();
+                if(subject instanceof IRI) {
+                    changedIris.add((IRI) subject);
+                    fullRefresh |= headerIris.contains(subject);
+                }
+            } else {
+                for(OWLEntity e : axiom.getSignature()) {
+                    changedIris.add(e.getIRI());
+                }
+            }
+        }
+        if(fullRefresh || !changedIris.isEmpty()) {
+            schedule(changedIris, changedAxiomTypes, fullRefresh);
+        }
+    }
+
+    private synchronized void schedule(Set<IRI> changedIris, Set<AxiomType<?>> changedAxiomTypes, boolean fullRefresh) {
+        pendingIris.addAll(changedIris);
+        pendingAxiomTypes.addAll(changedAxiomTypes);
+        pendingFullRefresh |= fullRefresh;
+        if(!refreshScheduled && !executor.isShutdown()) {
+            refreshScheduled = true;
+            executor.schedule(this::refreshPending, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refreshPending() {
+        Set<IRI> iris;
+        Set<AxiomType<?>> axiomTypes;
+        boolean fullRefresh;
+        synchronized (this) {
+            iris = pendingIris;
+            axiomTypes = pendingAxiomTypes;
+            fullRefresh = pendingFullRefresh;
+            pendingIris = new HashSet<>();
+            pendingAxiomTypes = new HashSet<>();
+            pendingFullRefresh = false;
+            refreshScheduled = false;
+        }
+        try {
+            if(fullRefresh) {
+                refreshAll();
+            } else {
+                refreshRows(iris, axiomTypes);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error updating CSV export: " + exporter.getOutputFile().getAbsolutePath(), e);
+        }
+    }
+
+    private void refreshAll() throws IOException {
+        writeAll(onEventDispatchThread(this::renderAll));
+    }
+
+    /**
+     * Render all rows with a new context. Called on the event dispatch thread.
+     */
+    private List<CsvExporter.RenderedRow> renderAll() {
+        context = exporter.newWatchContext();
+        return exporter.renderRows(context, entities);
+    }
+
+    private void writeAll(List<CsvExporter.RenderedRow> rendered) throws IOException {
+        rows.clear();
+        rowDependencies.clear();
+        dependentRows.clear();
+        for(int i = 0; i < rendered.size(); i++) {
+            rows.add(rendered.get(i).getText());
+            rowDependencies.add(Collections.emptySet());
+            setDependencies(i, rendered.get(i).getDependencies());
+        }
+        exporter.writeRenderedRows(rows);
+        logger.info("Exported {} rows to {}", rows.size(), exporter.getOutputFile().getAbsolutePath());
+    }
+
+    private void refreshRows(Set<IRI> iris, Set<AxiomType<?>> axiomTypes) throws IOException {
+        SortedSet<Integer> affectedRows = new TreeSet<>();
+        for(IRI iri : iris) {
+            affectedRows.addAll(dependentRows.get(iri));
+        }
+        List<OWLEntity> affectedEntities = new ArrayList<>(affectedRows.size());
+        for(int row : affectedRows) {
+            affectedEntities.add(entities.get(row));
+        }
+        List<CsvExporter.RenderedRow> rendered = onEventDispatchThread(() -> {
+            context.update(iris, axiomTypes); // even if no row is affected, so that the context stays in step
+            return exporter.renderRows(context, affectedEntities);
+        });
+        if(affectedRows.isEmpty()) {
+            return;
+        }
+        Iterator<CsvExporter.RenderedRow> iterator = rendered.iterator();
+        for(int row : affectedRows) {
+            CsvExporter.RenderedRow renderedRow = iterator.next();
+            rows.set(row, renderedRow.getText());
+            setDependencies(row, renderedRow.getDependencies());
+        }
+        exporter.writeRenderedRows(rows);
+        logger.info("Updated {} of {} rows in {}", affectedRows.size(), rows.size(), exporter.getOutputFile().getAbsolutePath());
+    }
+
+    /**
+     * Run the given read and render step on the event dispatch thread and wait for its result, or run it directly if
+     * called on that thread
+     */
+    private static <T> T onEventDispatchThread(Supplier<T> task) throws IOException {
+        if(SwingUtilities.isEventDispatchThread()) {
+            return task.get();
+        }
+        FutureTask<T> future = new FutureTask<>(task::get);
+        SwingUtilities.invokeLater(future);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering rows");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void setDependencies(int row, Set<IRI> dependencies) {
+        for(IRI iri : rowDependencies.get(row)) {
+            dependentRows.remove(iri, row);
+        }
+        for(IRI iri : dependencies) {
+            dependentRows.put(iri, row);
+        }
+        rowDependencies.set(row, dependencies);
+    }
+}
@@ -1,24 +1,32 @@
 package edu.stanford.protege.csv.export;
 
+import com.google.common.collect.ImmutableSet;
 import org.protege.editor.owl.OWLEditorKit;
-import org.protege.editor.owl.model.OWLModelManager;
-import org.protege.editor.owl.ui.renderer.OWLModelManagerEntityRenderer;
-import org.protege.editor.owl.ui.renderer.OWLObjectRenderer;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.Imports;
-import org.semanticweb.owlapi.reasoner.BufferingMode;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
-import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
-import org.semanticweb.owlapi.reasoner.structural.StructuralReasoner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongConsumer;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * @author Rafael Gonçalves <br>
@@ -27,22 +35,37 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class CsvExporter {
     private static final Logger logger = LoggerFactory.getLogger(CsvExporter.class.getName());
+    private static final int PARALLEL_CHUNK_SIZE = 512, PROGRESS_INTERVAL = 256, ESCAPE_TIMING_INTERVAL = 64, MAX_EXPORT_ATTEMPTS = 3;
+    private static final Set<AxiomType<?>> HIERARCHY_AXIOM_TYPES = ImmutableSet.of(AxiomType.SUBCLASS_OF, AxiomType.EQUIVALENT_CLASSES);
+    private static final Set<AxiomType<?>> ASSERTION_AXIOM_TYPES = ImmutableSet.of(AxiomType.DATA_PROPERTY_ASSERTION, AxiomType.OBJECT_PROPERTY_ASSERTION);
     private final boolean includeHeaders, includeEntityTypes, useCurrentRendering, includeSuperclasses, includeCustomText;
     private final String fileDelimiter, propertyValuesDelimiter, customText;
-    private final List<OWLEntity> results, properties;
+    private final Iterable<OWLEntity> results;
+    private final List<OWLEntity> properties;
     private final File outputFile;
-    private final OWLEditorKit editorKit;
-    private final OWLModelManagerEntityRenderer entityRenderer;
-    private final OWLObjectRenderer objectRenderer;
     private final OWLOntology ont;
-    private final OwlClassExpressionVisitor visitor = new OwlClassExpressionVisitor();
+    private final ExportRenderer renderer;
+    private final int parallelism;
+    private final long renderingCacheSize;
+    private final ExportProgressMonitor progressMonitor;
+    private final boolean gzipOutput;
+    private final int compressionThreads, shardWriterThreads;
+    private final long maxShardRows, maxShardSize;
+    private final boolean iriDictionaryOutput;
+    private final IriDictionary watchedIriDictionary;
+    private final Charset charset;
+    private final int writeBufferSize;
+    private final OWLReasoner reasoner;
+    private final boolean includeInferredSuperclasses, includeInferredTypes, includeAncestors;
+    private final HierarchySource ancestorsHierarchy;
 
     /**
      * Package-private constructor. Use {@link CsvExporterBuilder}
      *
-     * @param editorKit OWL Editor Kit
+     * @param ont   OWL ontology to export from
+     * @param renderer  Renderer for entities and other OWL objects
      * @param outputFile    Output file for CSV export
-     * @param output   List of entities that should be exported
+     * @param output   Entities that should be exported, which are iterated once per export
      * @param properties    List of properties whose restrictions on output entities should be exported
      * @param fileDelimiter Primary delimiter for entries
      * @param propertyValuesDelimiter   Delimiter for the (potentially multiple) values of the properties selected
@@ -52,11 +75,33 @@ public class CsvExporter {
      * @param includeSuperclasses   true if the superclass(es) of each class in the result set should be included, false otherwise
      * @param includeCustomText true if a row should be added at the end of the file containing custom text, false otherwise
      * @param customText    Custom text to be included in the last row of the file
+     * @param parallelism   Number of threads used to render rows; 1 renders rows on the calling thread
+     * @param renderingCacheSize    Maximum number of filler and individual renderings cached during an export
+     * @param progressMonitor   Monitor that receives progress reports and can cancel the export
+     * @param gzipOutput    true if the output file should be gzip-compressed while it is written, false otherwise
+     * @param compressionThreads    Number of threads used to compress the output when it is gzip-compressed
+     * @param maxShardRows  Maximum number of rows per output shard, or 0 for no limit
+     * @param maxShardSize  Maximum number of bytes per output shard, after compression, or 0 for no limit
+     * @param shardWriterThreads    Number of output shards that can be written concurrently
+     * @param iriDictionaryOutput   true if entities should be written as ids listed in a separate IRI dictionary file, false otherwise
+     * @param charset   Charset of the output files
+     * @param writeBufferSize   Size in bytes of the buffer into which output is encoded before it is written
+     * @param reasoner  Reasoner from which inferred superclasses, types and ancestors are taken, which may be null if
+     *                  these are not included. Its hierarchy is read by the thread that runs the export.
+     * @param includeInferredSuperclasses   true if the inferred direct superclasses of each class should be included, false otherwise
+     * @param includeInferredTypes  true if the inferred direct types of each individual should be included, false otherwise
+     * @param includeAncestors  true if all ancestors of each class should be included, false otherwise
+     * @param ancestorsHierarchy    Class hierarchy from which the ancestors are taken
      */
-    CsvExporter(OWLEditorKit editorKit, File outputFile, List<OWLEntity> output, List<OWLEntity> properties, String fileDelimiter,
+    CsvExporter(OWLOntology ont, ExportRenderer renderer, File outputFile, Iterable<OWLEntity> output, List<OWLEntity> properties, String fileDelimiter,
                         String propertyValuesDelimiter, boolean includeHeaders, boolean includeEntityTypes, boolean useCurrentRendering,
-                        boolean includeSuperclasses, boolean includeCustomText, String customText) {
-        this.editorKit = checkNotNull(editorKit);
+                        boolean includeSuperclasses, boolean includeCustomText, String customText, int parallelism,
+                        long renderingCacheSize, ExportProgressMonitor progressMonitor, boolean gzipOutput, int compressionThreads,
+                        long maxShardRows, long maxShardSize, int shardWriterThreads, boolean iriDictionaryOutput,
+                        Charset charset, int writeBufferSize, OWLReasoner reasoner, boolean includeInferredSuperclasses,
+                        boolean includeInferredTypes, boolean includeAncestors, HierarchySource ancestorsHierarchy) {
+        this.ont = checkNotNull(ont);
+        this.renderer = checkNotNull(renderer);
         this.outputFile = checkNotNull(outputFile);
         this.results = checkNotNull(output);
         this.properties = checkNotNull(properties);
@@ -68,194 +113,422 @@ public class CsvExporter {
         this.includeSuperclasses = checkNotNull(includeSuperclasses);
         this.includeCustomText = checkNotNull(includeCustomText);
         this.customText = checkNotNull(customText);
-
-        OWLModelManager manager = editorKit.getModelManager();
-        entityRenderer = manager.getOWLEntityRenderer();
-        objectRenderer = manager.getOWLObjectRenderer();
-        ont = manager.getActiveOntology();
+        checkArgument(parallelism > 0, "Parallelism must be positive: %s", parallelism);
+        this.parallelism = parallelism;
+        checkArgument(renderingCacheSize >= 0, "Rendering cache size must not be negative: %s", renderingCacheSize);
+        this.renderingCacheSize = renderingCacheSize;
+        this.progressMonitor = checkNotNull(progressMonitor);
+        this.gzipOutput = gzipOutput;
+        checkArgument(compressionThreads > 0, "Number of compression threads must be positive: %s", compressionThreads);
+        this.compressionThreads = compressionThreads;
+        checkArgument(maxShardRows >= 0, "Maximum number of rows per shard must not be negative: %s", maxShardRows);
+        this.maxShardRows = maxShardRows;
+        checkArgument(maxShardSize >= 0, "Maximum shard size must not be negative: %s", maxShardSize);
+        this.maxShardSize = maxShardSize;
+        checkArgument(shardWriterThreads > 0, "Number of shard writer threads must be positive: %s", shardWriterThreads);
+        this.shardWriterThreads = shardWriterThreads;
+        checkArgument(!(iriDictionaryOutput && useCurrentRendering), "IRI dictionary output requires entities to be rendered as IRIs");
+        this.iriDictionaryOutput = iriDictionaryOutput;
+        this.watchedIriDictionary = (iriDictionaryOutput ? new IriDictionary() : null);
+        this.charset = checkNotNull(charset);
+        checkArgument(writeBufferSize >= 16, "Write buffer size must be at least 16 bytes: %s", writeBufferSize);
+        this.writeBufferSize = writeBufferSize;
+        this.ancestorsHierarchy = checkNotNull(ancestorsHierarchy);
+        this.includeInferredSuperclasses = includeInferredSuperclasses;
+        this.includeInferredTypes = includeInferredTypes;
+        this.includeAncestors = includeAncestors;
+        checkArgument(reasoner != null || !includesInferredColumns(), "Inferred columns require a reasoner");
+        this.reasoner = reasoner;
     }
 
     public static CsvExporterBuilder builder(OWLEditorKit editorKit, File outputFile) {
         return new CsvExporterBuilder(editorKit, outputFile);
     }
 
+    public static CsvExporterBuilder builder(OWLOntology ont, ExportRenderer renderer, File outputFile) {
+        return new CsvExporterBuilder(ont, renderer, outputFile);
+    }
+
+    /**
+     * Export all rows to the output file. The ontology may be edited while the export runs: the export checks with
+     * the {@link OntologyChangeTracker} whether its imports closure has changed since the export started at every
+     * progress report and before the output is committed, and if so, or if the export failed after such a change,
+     * it discards its partial output and starts over, a few times at most. The output thus always reflects the
+     * ontology as it was at some point during the export.
+     *
+     * @throws IOException if the output could not be written, or the ontology changed during every attempt
+     * @throws ExportCancelledException if the export was cancelled through its progress monitor
+     */
     public void export() throws IOException {
         logger.info("Exporting to file: " + outputFile.getAbsolutePath());
-        FileWriter fw = new FileWriter(outputFile);
-        String header = getHeader();
-        OWLReasoner reasoner = null;
-        if(isIncludingSuperclasses()) {
-            reasoner = new StructuralReasoner(editorKit.getModelManager().getActiveOntology(), new SimpleConfiguration(), BufferingMode.BUFFERING);
-        }
-        List<String> rows = new ArrayList<>();
-        for(OWLEntity e : results) {
-            String row = getRendering(e) + fileDelimiter;
-            if(includeEntityTypes) {
-                row += e.getEntityType().getName() + fileDelimiter;
-            }
-            if(includeSuperclasses && e.isOWLClass()) {
-                row += getSuperclasses(e, reasoner) + fileDelimiter;
-            }
-            if(!properties.isEmpty()) {
-                for (OWLEntity property : properties) {
-                    row += getPropertyValues(e, property);
+        OntologyChangeTracker tracker = OntologyChangeTracker.get(ont.getOWLOntologyManager());
+        for(int attempt = 1; ; attempt++) {
+            Map<Long, Long> changeCounts = tracker.getImportsClosureChangeCounts(ont);
+            try {
+                export(changeCounts);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if(e instanceof ExportCancelledException || tracker.getImportsClosureChangeCounts(ont).equals(changeCounts)) {
+                    throw e;
                 }
+                if(attempt == MAX_EXPORT_ATTEMPTS) {
+                    throw new IOException("The ontology changed during each of " + attempt + " attempts to export it", e);
+                }
+                logger.info(" ... the ontology changed during the export, starting over");
             }
-            rows.add(row);
         }
+    }
+
+    /**
+     * Make one attempt at exporting all rows
+     *
+     * @param changeCounts  Change counts of the imports closure when the attempt started, see
+     *                      {@link OntologyChangeTracker#getImportsClosureChangeCounts(OWLOntology)}
+     */
+    private void export(Map<Long, Long> changeCounts) throws IOException {
+        ExportMetrics metrics = new ExportMetrics();
+        metrics.startAllocationMeasurement(); // before the context, so that the allocations of its indexes are counted
+        ExportContext context = new ExportContext(iriDictionaryOutput ? new IriDictionary() : null, metrics, parallelism > 1 && useCurrentRendering, changeCounts);
+        CsvRowEncoder encoder = new CsvRowEncoder(fileDelimiter, propertyValuesDelimiter);
         if(includeHeaders) {
-            rows.add(0, header);
+            appendHeader(encoder);
         }
-        if(includeCustomText) {
-            rows.add("\n\n" + customText);
-        }
-        for (String row : rows) { // write results to file
-            fw.write(row + "\n");
+        long rowCount;
+        ForkJoinPool pool = (parallelism > 1 ? new ForkJoinPool(parallelism) : null);
+        try {
+            RowSink sink = openSink(encoder.takeContents(), metrics);
+            try {
+                if(pool != null) {
+                    rowCount = writeRowsInParallel(context, sink, pool);
+                } else {
+                    rowCount = writeRows(context, encoder, sink);
+                }
+                appendCustomText(encoder);
+                long start = System.nanoTime();
+                sink.writeTrailer(encoder.takeContents());
+                context.checkUnchanged();
+                sink.commit();
+                metrics.addWriteTime(System.nanoTime() - start);
+            } catch (IOException | RuntimeException | Error e) {
+                discard(sink, e);
+                logger.info(e instanceof ExportCancelledException ? " ... export cancelled, removed partial output" : " ... export stopped, removed partial output");
+                throw e;
+            }
+            if(context.iriDictionary != null) {
+                writeIriDictionary(context.iriDictionary);
+            }
+            metrics.finish(); // while the worker threads, whose allocations are measured, are alive
+        } finally {
+            context.dispose();
+            if(pool != null) {
+                pool.shutdownNow();
+            }
         }
-        fw.flush();
-        fw.close();
-        logger.info(" ... done exporting");
+        ExportMetricsPublisher.publish(outputFile, metrics);
+        logger.info(" ... done exporting {} rows: {}", rowCount, metrics.toLogString());
     }
 
-    private String getHeader() {
-        String header = "Entity" + fileDelimiter;
-        if(includeEntityTypes) {
-            header += "Type" + fileDelimiter;
+    /**
+     * Discard the output of an export that did not complete, keeping the failure that stopped the export
+     */
+    private static void discard(RowSink sink, Throwable failure) {
+        try {
+            sink.discard();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
         }
-        if(includeSuperclasses) {
-            header += "Superclass(es)" + fileDelimiter;
+    }
+
+    /**
+     * Export all rows and keep the output file up to date as the ontology changes, until the returned watcher is stopped
+     *
+     * @return Started export watcher
+     * @throws IOException if the output file could not be written
+     */
+    public CsvExportWatcher watch() throws IOException {
+        checkState(!isShardedOutput(), "Sharded output cannot be watched");
+        checkState(!includesInferredColumns(), "Exports with inferred columns cannot be watched, since their snapshot of the inferred hierarchy is stale once the ontology changes");
+        CsvExportWatcher watcher = new CsvExportWatcher(this);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Create the context with which a {@link CsvExportWatcher} renders rows. The watcher keeps the context up to date
+     * as the ontology changes, see {@link ExportContext#update(Set, Set)}, rather than building a new one, with all
+     * of its indexes, for each batch of changes.
+     *
+     * @return Export context
+     */
+    ExportContext newWatchContext() {
+        ExportMetrics metrics = new ExportMetrics();
+        metrics.startAllocationMeasurement();
+        return new ExportContext(watchedIriDictionary, metrics, false, null);
+    }
+
+    /**
+     * Render the rows of the given entities in order, recording for each row the IRIs of the entities
+     * whose renderings appear in it. Used by {@link CsvExportWatcher} to re-render individual rows.
+     *
+     * @param context   Export context, see {@link #newWatchContext()}
+     * @param entities  List of entities whose rows should be rendered
+     * @return List of rendered rows, in the order of the given entities
+     */
+    List<RenderedRow> renderRows(ExportContext context, List<OWLEntity> entities) {
+        RowRenderer renderer = new RowRenderer(checkNotNull(context));
+        CsvRowEncoder encoder = new CsvRowEncoder(fileDelimiter, propertyValuesDelimiter);
+        List<RenderedRow> rows = new ArrayList<>(entities.size());
+        for(OWLEntity e : entities) {
+            Set<IRI> dependencies = new HashSet<>();
+            renderer.setDependencies(dependencies);
+            renderer.appendRow(e, encoder);
+            renderer.resolveReferences(encoder);
+            rows.add(new RenderedRow(encoder.takeContents(), dependencies));
         }
-        if(!properties.isEmpty()) {
-            for (OWLEntity property : properties) {
-                header += getRendering(property) + fileDelimiter;
+        return rows;
+    }
+
+    /**
+     * Write the given previously rendered rows to the output file, together with the header and custom
+     * text if these are included. The whole file is written, however few rows have changed, to a temporary file
+     * first and then moved into place, so that readers of the output file never see a partially written file. The IRI dictionary, if any, is
+     * rewritten in the same way before the rows, so that it covers every id in the rows.
+     *
+     * @param rows  Rendered rows, each terminated by a line break
+     * @throws IOException if the file could not be written
+     */
+    void writeRenderedRows(Iterable<String> rows) throws IOException {
+        File tmpFile = new File(outputFile.getAbsolutePath() + ".tmp");
+        try (Writer writer = openWriter(tmpFile)) {
+            CsvRowEncoder encoder = new CsvRowEncoder(fileDelimiter, propertyValuesDelimiter);
+            if(includeHeaders) {
+                appendHeader(encoder);
             }
+            encoder.flush(writer);
+            for(String row : rows) {
+                writer.write(row);
+            }
+            appendCustomText(encoder);
+            encoder.flush(writer);
         }
-        return header;
-    }
-
-    private String getPropertyValues(OWLEntity entity, OWLEntity property) {
-        List<String> values = new ArrayList<>();
-        if(property.isOWLAnnotationProperty()) {
-            values = getAnnotationPropertyValues(entity, property);
-        } else if(property.isOWLDataProperty()) {
-            values = getPropertyValuesForEntity(entity, property);
-        } else if(property.isOWLObjectProperty()) {
-            values = getPropertyValuesForEntity(entity, property);
-        }
-        String output = "";
-        if(!values.isEmpty()) {
-            Iterator<String> iter = values.iterator();
-            output += "\"";
-            while (iter.hasNext()) {
-                output += "'" + iter.next() + "'";
-                if (iter.hasNext()) {
-                    output += propertyValuesDelimiter;
-                } else {
-                    output += "\"" + fileDelimiter;
+        if(watchedIriDictionary != null) {
+            writeIriDictionary(watchedIriDictionary); // ids are never reassigned, so the dictionary can go first
+        }
+        replaceFile(tmpFile, outputFile);
+    }
+
+    private void replaceFile(File tmpFile, File file) throws IOException {
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Write the given IRI dictionary to a temporary file and move it into place as the IRI dictionary file
+     */
+    private void writeIriDictionary(IriDictionary dictionary) throws IOException {
+        File dictionaryFile = getIriDictionaryFile();
+        File tmpFile = new File(dictionaryFile.getAbsolutePath() + ".tmp");
+        try (Writer writer = openWriter(tmpFile)) {
+            dictionary.write(writer, fileDelimiter, includeHeaders);
+        }
+        replaceFile(tmpFile, dictionaryFile);
+        logger.info(" ... wrote {} IRIs to dictionary {}", dictionary.size(), dictionaryFile.getAbsolutePath());
+    }
+
+    private RowSink openSink(String header, ExportMetrics metrics) throws IOException {
+        if(isShardedOutput()) {
+            return new ShardedRowSink(outputFile, header, maxShardRows, maxShardSize, shardWriterThreads, (file, byteCounter) -> openWriter(file, metrics, byteCounter));
+        }
+        return new SingleFileRowSink(outputFile, header, (file, byteCounter) -> openWriter(file, metrics, byteCounter));
+    }
+
+    /**
+     * Open a writer on the given file, compressing the written text if the output is gzip-compressed
+     */
+    private Writer openWriter(File file) throws IOException {
+        return openWriter(file, null, null);
+    }
+
+    /**
+     * Open a writer on the given file, counting the bytes written to the file in the given metrics and byte counter,
+     * if not null
+     */
+    private Writer openWriter(File file, ExportMetrics metrics, LongConsumer byteCounter) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        WritableByteChannel channel = fileChannel;
+        if(metrics != null || byteCounter != null) {
+            channel = new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    int written = fileChannel.write(src);
+                    if(metrics != null) {
+                        metrics.addBytes(written);
+                    }
+                    if(byteCounter != null) {
+                        byteCounter.accept(written);
+                    }
+                    return written;
                 }
-            }
-        } else {
-            output += fileDelimiter;
-        }
-        return output;
-    }
-
-    private List<String> getAnnotationPropertyValues(OWLEntity entity, OWLEntity property) {
-        List<String> values = new ArrayList<>();
-        Set<OWLAnnotationAssertionAxiom> axioms = ont.getAnnotationAssertionAxioms(entity.getIRI());
-        for(OWLAnnotationAssertionAxiom ax : axioms) {
-            if(ax.getProperty().equals(property)) {
-                OWLAnnotationValue annValue = ax.getValue();
-                if(annValue instanceof IRI) {
-                    values.add(annValue.toString());
-                } else if(annValue instanceof OWLLiteral) {
-                    String literalStr = ((OWLLiteral) annValue).getLiteral();
-                    literalStr = literalStr.replaceAll("\"", "'");
-                    values.add(literalStr);
-                } else if(annValue instanceof OWLAnonymousIndividual) {
-                    values.add("AnonymousIndividual-" + ((OWLAnonymousIndividual)annValue).getID().getID());
+
+                @Override
+                public boolean isOpen() {
+                    return fileChannel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    fileChannel.close();
                 }
+            };
+        }
+        if(gzipOutput) {
+            channel = Channels.newChannel(new ParallelGzipOutputStream(Channels.newOutputStream(channel), compressionThreads));
+        }
+        return new ChannelWriter(channel, charset, writeBufferSize);
+    }
+
+    private long writeRows(ExportContext context, CsvRowEncoder encoder, RowSink sink) throws IOException {
+        RowRenderer renderer = new RowRenderer(context);
+        long rowCount = 0;
+        for(OWLEntity e : results) { // rows are written as they are produced, so memory use does not grow with the result set
+            renderer.appendRow(e, encoder);
+            if(encoder.isFull()) {
+                renderer.resolveReferences(encoder);
+                writeRows(sink, encoder, context.metrics);
+            }
+            rowCount++;
+            if(rowCount % PROGRESS_INTERVAL == 0) {
+                reportProgress(context, rowCount);
             }
         }
-        return values;
-    }
-
-    private List<String> getPropertyValuesForEntity(OWLEntity entity, OWLEntity property) {
-        List<String> values = new ArrayList<>();
-        if(entity.isOWLClass()) {
-            for (OWLAxiom axiom : ont.getAxioms((OWLClass) entity, Imports.INCLUDED)) {
-                if(axiom.getSignature().contains(property)) {
-                    if(axiom.getAxiomType().equals(AxiomType.SUBCLASS_OF)) {
-                        Optional<String> filler = getFillerForAxiom((OWLSubClassOfAxiom)axiom, entity, property);
-                        filler.ifPresent(values::add);
-                    } else if (axiom.getAxiomType().equals(AxiomType.EQUIVALENT_CLASSES)) {
-                        OWLSubClassOfAxiom subClassOfAxiom = ((OWLEquivalentClassesAxiom) axiom).asOWLSubClassOfAxioms().iterator().next();
-                        Optional<String> filler = getFillerForAxiom(subClassOfAxiom, entity, property);
-                        filler.ifPresent(values::add);
-                    }
+        renderer.resolveReferences(encoder);
+        writeRows(sink, encoder, context.metrics);
+        reportProgress(context, rowCount);
+        return rowCount;
+    }
+
+    /**
+     * Render the rows in chunks on a fork-join pool, with one row renderer per worker thread, and write the
+     * rendered chunks in their original order. At most two chunks per worker are held in memory at any time.
+     * The output is identical to that of {@link #writeRows(ExportContext, CsvRowEncoder, RowSink)}: the ids of
+     * a dictionary-encoded export are assigned as the chunks are written, in output order, see {@link IriDictionary}.
+     * The pool is left running, so that the allocations of its threads can still be measured when the export ends.
+     */
+    private long writeRowsInParallel(ExportContext context, RowSink sink, ForkJoinPool pool) throws IOException {
+        ThreadLocal<RowRenderer> renderers = ThreadLocal.withInitial(() -> new RowRenderer(context));
+        Queue<CsvRowEncoder> freeEncoders = new ConcurrentLinkedQueue<>();
+        Deque<ForkJoinTask<RenderedChunk>> pending = new ArrayDeque<>();
+        Deque<Integer> pendingSizes = new ArrayDeque<>();
+        Iterator<OWLEntity> iterator = results.iterator();
+        long rowCount = 0;
+        while(iterator.hasNext() || !pending.isEmpty()) {
+            while(iterator.hasNext() && pending.size() < parallelism * 2) {
+                List<OWLEntity> chunk = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+                while(iterator.hasNext() && chunk.size() < PARALLEL_CHUNK_SIZE) {
+                    chunk.add(iterator.next());
                 }
+                pending.addLast(pool.submit(() -> renderChunk(chunk, renderers.get(), freeEncoders)));
+                pendingSizes.addLast(chunk.size());
             }
-        } else if(entity.isOWLNamedIndividual()) {
-            for(OWLAxiom axiom : ont.getAxioms((OWLNamedIndividual) entity, Imports.INCLUDED)) {
-                if (axiom.getSignature().contains(property)) {
-                    if (axiom.getAxiomType().equals(AxiomType.DATA_PROPERTY_ASSERTION)) {
-                        OWLDataPropertyAssertionAxiom dataAssertionAxiom = (OWLDataPropertyAssertionAxiom) axiom;
-                        if (dataAssertionAxiom.getProperty().equals(property)) {
-                            OWLLiteral literal = dataAssertionAxiom.getObject();
-                            String literalStr = literal.getLiteral();
-                            literalStr = literalStr.replaceAll("\"", "'");
-                            values.add(literalStr);
-                        }
-                    } else if(axiom.getAxiomType().equals(AxiomType.OBJECT_PROPERTY_ASSERTION)) {
-                        OWLObjectPropertyAssertionAxiom objAssertionAxiom = (OWLObjectPropertyAssertionAxiom) axiom;
-                        if(objAssertionAxiom.getProperty().equals(property)) {
-                            OWLIndividual individual = objAssertionAxiom.getObject();
-                            values.add(getRendering(individual));
-                        }
-                    }
-                }
+            RenderedChunk rendered = pending.removeFirst().join();
+            if(context.iriDictionary != null) {
+                context.iriDictionary.resolve(rendered.encoder, rendered.references);
             }
+            writeRows(sink, rendered.encoder, context.metrics);
+            freeEncoders.add(rendered.encoder);
+            rowCount += pendingSizes.removeFirst();
+            reportProgress(context, rowCount);
         }
-        return values;
+        return rowCount;
     }
 
-    private Optional<String> getFillerForAxiom(OWLSubClassOfAxiom axiom, OWLEntity entity, OWLEntity property) {
-        String filler = null;
-        OWLClassExpression ce;
-        if(axiom.getSubClass().equals(entity)) {
-            ce = axiom.getSuperClass();
-        } else {
-            ce = axiom.getSubClass();
-        }
-        ce.accept(visitor);
-        Optional<OWLEntity> optProp = visitor.getProperty();
-        if(optProp.isPresent() && optProp.get().equals(property)) {
-            Optional<OWLObject> optFiller = visitor.getFiller();
-            if(optFiller.isPresent()) {
-                filler = getRendering(optFiller.get());
-            }
+    private static void writeRows(RowSink sink, CsvRowEncoder encoder, ExportMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        sink.writeRows(encoder);
+        metrics.addWriteTime(System.nanoTime() - start);
+    }
+
+    private void reportProgress(ExportContext context, long rowCount) throws ExportCancelledException {
+        progressMonitor.rowsExported(rowCount, getResultCount());
+        if(progressMonitor.isCancelled()) {
+            throw new ExportCancelledException();
         }
-        return Optional.ofNullable(filler);
+        context.checkUnchanged();
     }
 
-    private String getSuperclasses(OWLEntity e, OWLReasoner reasoner) {
-        Set<OWLClass> superclasses = reasoner.getSuperClasses(e.asOWLClass(), true).getFlattened();
-        String output = "";
-        Iterator<OWLClass> iter = superclasses.iterator();
-        while (iter.hasNext()) {
-            OWLClass c = iter.next();
-            output += getRendering(c);
-            if(iter.hasNext()) {
-                output += propertyValuesDelimiter;
-            }
+    private RenderedChunk renderChunk(List<OWLEntity> chunk, RowRenderer renderer, Queue<CsvRowEncoder> freeEncoders) {
+        CsvRowEncoder encoder = freeEncoders.poll();
+        if(encoder == null) {
+            encoder = new CsvRowEncoder(fileDelimiter, propertyValuesDelimiter);
+        }
+        for(OWLEntity e : chunk) {
+            renderer.appendRow(e, encoder);
+        }
+        return new RenderedChunk(encoder, renderer.takeReferences());
+    }
+
+    /**
+     * Thrown when the ontology has changed while an export was running, which makes the export start over
+     */
+    private static final class OntologyChangedException extends RuntimeException {
+        private static final long serialVersionUID = 4417032716290386465L;
+
+        OntologyChangedException() {
+            super("The ontology changed during the export");
+        }
+    }
+
+    /**
+     * Rows rendered by a worker thread, with the IRIs their references refer to
+     */
+    private static final class RenderedChunk {
+        private final CsvRowEncoder encoder;
+        private final List<IRI> references;
+
+        RenderedChunk(CsvRowEncoder encoder, List<IRI> references) {
+            this.encoder = encoder;
+            this.references = references;
         }
-        return output;
+    }
+
+    private void appendCustomText(CsvRowEncoder encoder) {
+        if(includeCustomText) {
+            encoder.appendRaw("\n\n");
+            encoder.appendRaw(customText);
+            encoder.endRow();
+        }
+    }
+
+    private void appendHeader(CsvRowEncoder encoder) {
+        encoder.appendCell("Entity");
+        if(includeEntityTypes) {
+            encoder.appendCell("Type");
+        }
+        if(includeSuperclasses) {
+            encoder.appendCell("Superclass(es)");
+        }
+        if(includeInferredSuperclasses) {
+            encoder.appendCell("Inferred superclass(es)");
+        }
+        if(includeInferredTypes) {
+            encoder.appendCell("Inferred type(s)");
+        }
+        if(includeAncestors) {
+            encoder.appendCell(ancestorsHierarchy == HierarchySource.INFERRED ? "Inferred ancestors" : "Ancestors");
+        }
+        for (OWLEntity property : properties) {
+            encoder.appendCell(getRendering(property));
+        }
+        encoder.endRow();
     }
 
     private String getRendering(OWLEntity e) {
         String rendering;
         if(useCurrentRendering) {
-            rendering = entityRenderer.render(e);
+            rendering = renderer.renderEntity(e);
         } else {
             rendering = e.getIRI().toString();
         }
@@ -263,7 +536,7 @@ public class CsvExporter {
     }
 
     private String getRendering(OWLObject obj) {
-        return objectRenderer.render(obj);
+        return renderer.renderObject(obj);
     }
 
     public String getFileDelimiter() {
@@ -278,10 +551,19 @@ public class CsvExporter {
         return customText;
     }
 
-    public List<OWLEntity> getResults() {
+    public Iterable<OWLEntity> getResults() {
         return results;
     }
 
+    /**
+     * Get the number of entities to export, if it is known without iterating over them
+     *
+     * @return Number of entities, or -1 if the entities are not given as a collection
+     */
+    public long getResultCount() {
+        return (results instanceof Collection ? ((Collection<?>) results).size() : -1);
+    }
+
     public List<OWLEntity> getProperties() {
         return properties;
     }
@@ -302,6 +584,22 @@ public class CsvExporter {
         return includeSuperclasses;
     }
 
+    public boolean isIncludingInferredSuperclasses() {
+        return includeInferredSuperclasses;
+    }
+
+    public boolean isIncludingInferredTypes() {
+        return includeInferredTypes;
+    }
+
+    public boolean isIncludingAncestors() {
+        return includeAncestors;
+    }
+
+    public HierarchySource getAncestorsHierarchy() {
+        return ancestorsHierarchy;
+    }
+
     public boolean isIncludingCustomText() {
         return includeCustomText;
     }
@@ -309,4 +607,361 @@ public class CsvExporter {
     public File getOutputFile() {
         return outputFile;
     }
+
+    public OWLOntology getOntology() {
+        return ont;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getRenderingCacheSize() {
+        return renderingCacheSize;
+    }
+
+    public ExportProgressMonitor getProgressMonitor() {
+        return progressMonitor;
+    }
+
+    public boolean isGzipOutput() {
+        return gzipOutput;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public boolean isShardedOutput() {
+        return maxShardRows > 0 || maxShardSize > 0;
+    }
+
+    /**
+     * Check whether any column is taken from the inferred hierarchy, which is then read from the reasoner
+     */
+    private boolean includesInferredColumns() {
+        return includeInferredSuperclasses || includeInferredTypes || (includeAncestors && ancestorsHierarchy == HierarchySource.INFERRED);
+    }
+
+    public long getMaxShardRows() {
+        return maxShardRows;
+    }
+
+    public long getMaxShardSize() {
+        return maxShardSize;
+    }
+
+    public int getShardWriterThreads() {
+        return shardWriterThreads;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    public boolean isIriDictionaryOutput() {
+        return iriDictionaryOutput;
+    }
+
+    /**
+     * Get the file to which the IRI dictionary is written: for an output file {@code export.csv}, this is
+     * {@code export-iris.csv} in the same directory
+     *
+     * @return IRI dictionary file
+     */
+    public File getIriDictionaryFile() {
+        String name = outputFile.getName();
+        int dot = name.indexOf('.', 1);
+        String dictionaryName = (dot > 0 ? name.substring(0, dot) + "-iris" + name.substring(dot) : name + "-iris");
+        return new File(outputFile.getAbsoluteFile().getParentFile(), dictionaryName);
+    }
+
+
+    /**
+     * State shared by all row renderers of a single export, or of the successive updates of a watched export
+     */
+    final class ExportContext {
+        private final AnnotationValueIndex annotationIndex;
+        private AssertedSuperclassIndex superclassIndex;
+        private ImportsClosureAxiomIndex axiomIndex;
+        private AncestorClosure ancestorClosure;
+        private final InferredHierarchyIndex inferredHierarchy;
+        private final ClassExpressionDecomposer decomposer = new ClassExpressionDecomposer();
+        private final RenderingCache renderingCache;
+        private final Map<OWLEntity, String> entityRenderings;
+        private final IriDictionary iriDictionary;
+        private final ExportMetrics metrics;
+        private final Map<Long, Long> changeCounts;
+
+        /**
+         * Constructor
+         *
+         * @param iriDictionary Dictionary of the IRIs written as ids, or null if entities are written as renderings
+         * @param metrics   Metrics of the export, which count the time taken to build the context
+         * @param prerenderEntities true if all entities of the imports closure should be rendered up front, on the
+         *                          calling thread, so that parallel row renderers do not wait for each other on the
+         *                          renderer, see {@link #renderEntities()}
+         * @param changeCounts  Change counts of the imports closure from before the context was built, against which
+         *                      {@link #checkUnchanged()} checks, or null if the context is kept up to date instead
+         */
+        ExportContext(IriDictionary iriDictionary, ExportMetrics metrics, boolean prerenderEntities, Map<Long, Long> changeCounts) {
+            this.iriDictionary = iriDictionary;
+            this.metrics = checkNotNull(metrics);
+            this.changeCounts = changeCounts;
+            long start = System.nanoTime();
+            annotationIndex = new AnnotationValueIndex(ont, properties);
+            renderingCache = new RenderingCache(CsvExporter.this::getRendering, renderingCacheSize);
+            entityRenderings = (prerenderEntities ? renderEntities() : Collections.emptyMap());
+            superclassIndex = (includeSuperclasses || (includeAncestors && ancestorsHierarchy == HierarchySource.ASSERTED) ? AssertedSuperclassIndex.get(ont) : null);
+            axiomIndex = (PropertyValueExtractor.needsAxiomIndex(properties) ? ImportsClosureAxiomIndex.get(ont) : null);
+            inferredHierarchy = (includesInferredColumns() ? new InferredHierarchyIndex(reasoner, includeInferredTypes) : null);
+            ancestorClosure = (includeAncestors ? newAncestorClosure() : null);
+            metrics.addSetupTime(System.nanoTime() - start);
+        }
+
+        /**
+         * Bring the context up to date with changes to the ontology. The annotation values and the cached renderings
+         * of the changed entities are re-read, in time proportional to their number. The indexes of the asserted
+         * hierarchy and of the axioms of each entity, and the ancestor closure, cover the whole imports closure, and
+         * are rebuilt, in time proportional to the size of the ontology, only if an axiom of a type they are built
+         * from has changed. Not thread-safe; must not be called while rows are rendered with the context.
+         *
+         * @param changedIris   IRIs of the entities in the signature of the changed axioms
+         * @param changedAxiomTypes Types of the changed axioms
+         */
+        void update(Set<IRI> changedIris, Set<AxiomType<?>> changedAxiomTypes) {
+            long start = System.nanoTime();
+            annotationIndex.update(ont, changedIris);
+            renderingCache.invalidate(changedIris);
+            boolean hierarchyChanged = !Collections.disjoint(changedAxiomTypes, HIERARCHY_AXIOM_TYPES);
+            if(superclassIndex != null && hierarchyChanged) {
+                superclassIndex = AssertedSuperclassIndex.get(ont);
+            }
+            if(axiomIndex != null && (hierarchyChanged || !Collections.disjoint(changedAxiomTypes, ASSERTION_AXIOM_TYPES))) {
+                axiomIndex = ImportsClosureAxiomIndex.get(ont);
+            }
+            if(ancestorClosure != null && hierarchyChanged) {
+                ancestorClosure = newAncestorClosure();
+            }
+            metrics.addSetupTime(System.nanoTime() - start);
+        }
+
+        private AncestorClosure newAncestorClosure() {
+            long start = System.currentTimeMillis();
+            AncestorClosure closure;
+            if(ancestorsHierarchy == HierarchySource.INFERRED) {
+                closure = new AncestorClosure(inferredHierarchy.getClasses(), inferredHierarchy::getSuperclasses);
+            } else {
+                closure = new AncestorClosure(ont.getClassesInSignature(Imports.INCLUDED), superclassIndex::getSuperclasses);
+            }
+            logger.info(" ... computed ancestors of {} classes in {} ms", closure.size(), System.currentTimeMillis() - start);
+            return closure;
+        }
+
+        /**
+         * Render all entities of the imports closure. Renderers such as those of Protégé are not thread-safe and are
+         * called under a lock, and the entity and superclass columns render an entity per value, so rendering them
+         * in the row renderers would serialize a parallel export on that lock. Reading the renderings from a map
+         * does not; only fillers that are not entities, which recur and are cached, are still rendered under the lock.
+         */
+        private Map<OWLEntity, String> renderEntities() {
+            long start = System.currentTimeMillis();
+            Map<OWLEntity, String> renderings = new HashMap<>();
+            for(OWLEntity e : ont.getSignature(Imports.INCLUDED)) {
+                renderings.put(e, renderer.renderEntity(e));
+            }
+            logger.info(" ... rendered {} entities in {} ms", renderings.size(), System.currentTimeMillis() - start);
+            return renderings;
+        }
+
+        /**
+         * Check that the imports closure has not changed since the context was built, so that the rows rendered so
+         * far agree with each other and with the indexes of the context
+         *
+         * @throws OntologyChangedException if the imports closure has changed
+         */
+        void checkUnchanged() {
+            if(changeCounts != null && !OntologyChangeTracker.get(ont.getOWLOntologyManager()).getImportsClosureChangeCounts(ont).equals(changeCounts)) {
+                throw new OntologyChangedException();
+            }
+        }
+
+        void dispose() {
+            logger.info(" ... rendering cache: {} hits, {} misses", renderingCache.getHitCount(), renderingCache.getMissCount());
+        }
+    }
+
+    /**
+     * Renders rows into an encoder. Each instance holds its own property value extractor, so
+     * a row renderer must be confined to one thread, while several can share an export context.
+     */
+    private final class RowRenderer {
+        private final ExportContext context;
+        private final PropertyValueExtractor extractor;
+        private final IriDictionary.References references;
+        private Set<IRI> dependencies;
+        private long rowCount = 0;
+
+        RowRenderer(ExportContext context) {
+            this.context = checkNotNull(context);
+            this.extractor = new PropertyValueExtractor(context.axiomIndex, context.decomposer, properties, this::renderFiller);
+            this.references = (context.iriDictionary != null ? new IriDictionary.References() : null);
+            context.metrics.startAllocationMeasurement();
+        }
+
+        /**
+         * Set the set to which the IRIs of the entities rendered in subsequent rows are added, or null to not record them
+         */
+        void setDependencies(Set<IRI> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Get the IRIs referred to by the rows rendered since the last call, indexed by reference number
+         */
+        List<IRI> takeReferences() {
+            return (references != null ? references.take() : Collections.emptyList());
+        }
+
+        /**
+         * Replace the references in the rows rendered since the last call, all of which must be in the given encoder,
+         * by their ids in the dictionary of the export, if it has one
+         */
+        void resolveReferences(CsvRowEncoder encoder) {
+            if(context.iriDictionary != null) {
+                context.iriDictionary.resolve(encoder, references.take());
+            }
+        }
+
+        /**
+         * Append the row of the given entity. The escaping of one row in {@link #ESCAPE_TIMING_INTERVAL} is timed,
+         * and the escape time of the export is estimated from these rows.
+         */
+        void appendRow(OWLEntity e, CsvRowEncoder encoder) {
+            boolean timingEscapes = (rowCount++ % ESCAPE_TIMING_INTERVAL == 0);
+            encoder.setTimingEscapes(timingEscapes);
+            long start = System.nanoTime(), escapeStart = encoder.getEscapeNanos();
+            int cellCount = 1 + properties.size(), valueCount = 0;
+            addDependency(e);
+            encoder.appendCell(renderEntity(e));
+            if(includeEntityTypes) {
+                encoder.appendCell(e.getEntityType().getName());
+                cellCount++;
+            }
+            if(includeSuperclasses && e.isOWLClass()) {
+                context.superclassIndex.getEquivalents(e.asOWLClass()).forEach(this::addDependency); // they share superclasses
+                valueCount += appendClasses(context.superclassIndex.getSuperclasses(e.asOWLClass()), encoder);
+                cellCount++;
+            }
+            if(includeInferredSuperclasses) {
+                valueCount += appendClasses(e.isOWLClass() ? context.inferredHierarchy.getSuperclasses(e.asOWLClass()) : Collections.emptySet(), encoder);
+                cellCount++;
+            }
+            if(includeInferredTypes) {
+                valueCount += appendClasses(e.isOWLNamedIndividual() ? context.inferredHierarchy.getTypes(e.asOWLNamedIndividual()) : Collections.emptySet(), encoder);
+                cellCount++;
+            }
+            if(includeAncestors) {
+                valueCount += appendClasses(e.isOWLClass() ? context.ancestorClosure.getAncestors(e.asOWLClass()) : Collections.emptyList(), encoder);
+                cellCount++;
+            }
+            long scanStart = System.nanoTime();
+            extractor.extract(e);
+            long scanNanos = System.nanoTime() - scanStart;
+            for (OWLEntity property : properties) {
+                valueCount += appendPropertyValues(e, property, encoder);
+            }
+            encoder.endRow();
+            encoder.setTimingEscapes(false);
+            context.metrics.addScanTime(scanNanos);
+            context.metrics.addRenderTime(System.nanoTime() - start - scanNanos); // escaping included, see ExportMetrics
+            if(timingEscapes) {
+                context.metrics.addEscapeTime((encoder.getEscapeNanos() - escapeStart) * ESCAPE_TIMING_INTERVAL);
+            }
+            context.metrics.addRow(cellCount, valueCount);
+        }
+
+        /**
+         * Append the cell of the given property
+         *
+         * @return Number of values in the cell
+         */
+        private int appendPropertyValues(OWLEntity entity, OWLEntity property, CsvRowEncoder encoder) {
+            List<String> values = Collections.emptyList();
+            if(property.isOWLAnnotationProperty()) {
+                values = context.annotationIndex.getValues(entity.getIRI(), property.asOWLAnnotationProperty());
+            } else if(property.isOWLDataProperty() || property.isOWLObjectProperty()) {
+                values = extractor.getValues(property);
+            }
+            encoder.beginValues();
+            for(String value : values) {
+                encoder.appendQuotedValue(value);
+            }
+            encoder.endValues();
+            return values.size();
+        }
+
+        private int appendClasses(Collection<OWLClass> classes, CsvRowEncoder encoder) {
+            encoder.beginValues();
+            for(OWLClass c : classes) {
+                addDependency(c);
+                encoder.appendValue(renderEntity(c));
+            }
+            encoder.endValues();
+            return classes.size();
+        }
+
+        private String renderFiller(OWLObject obj) {
+            if(dependencies != null) {
+                obj.getSignature().forEach(this::addDependency);
+            }
+            if(references != null && obj instanceof OWLEntity) {
+                return references.get(((OWLEntity) obj).getIRI());
+            }
+            return context.renderingCache.render(obj);
+        }
+
+        /**
+         * Render an entity of the entity or superclass columns, as a reference to its id if the output is
+         * dictionary-encoded
+         */
+        private String renderEntity(OWLEntity e) {
+            if(references != null) {
+                return references.get(e.getIRI());
+            }
+            String rendering = context.entityRenderings.get(e);
+            return (rendering != null ? rendering : getRendering(e));
+        }
+
+        private void addDependency(OWLEntity e) {
+            if(dependencies != null) {
+                dependencies.add(e.getIRI());
+            }
+        }
+    }
+
+    /**
+     * A rendered row together with the IRIs of the entities whose renderings it contains
+     */
+    static final class RenderedRow {
+        private final String text;
+        private final Set<IRI> dependencies;
+
+        RenderedRow(String text, Set<IRI> dependencies) {
+            this.text = checkNotNull(text);
+            this.dependencies = checkNotNull(dependencies);
+        }
+
+        String getText() {
+            return text;
+        }
+
+        Set<IRI> getDependencies() {
+            return dependencies;
+        }
+    }
 }
@@ -1,21 +1,31 @@
 package edu.stanford.protege.csv.export;
 
 import org.protege.editor.owl.OWLEditorKit;
+import org.protege.editor.owl.model.inference.OWLReasonerManager;
+import org.protege.editor.owl.model.inference.ReasonerStatus;
 import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 public class CsvExporterBuilder {
     public static final String FILE_DELIMITER = ",", PROPERTY_VALUES_DELIMITER = "\t";
-    private final OWLEditorKit editorKit;
+    public static final long RENDERING_CACHE_SIZE = 10000;
+    public static final int WRITE_BUFFER_SIZE = 1 << 18;
+    private final OWLOntology ont;
+    private final ExportRenderer renderer;
     private final File outputFile;
     private String fileDelimiter = FILE_DELIMITER;
     private String propertyValuesDelimiter = PROPERTY_VALUES_DELIMITER;
-    private List<OWLEntity> output = new ArrayList<>();
+    private Iterable<OWLEntity> output = new ArrayList<>();
     private List<OWLEntity> properties = new ArrayList<>();
     private boolean includeHeaders = false;
     private boolean includeEntityTypes = false;
@@ -23,19 +33,52 @@ public class CsvExporterBuilder {
     private boolean includeSuperclasses = false;
     private boolean includeCustomText = false;
     private String customText = "";
+    private int parallelism = 1;
+    private long renderingCacheSize = RENDERING_CACHE_SIZE;
+    private ExportProgressMonitor progressMonitor = ExportProgressMonitor.NO_OP;
+    private boolean gzipOutput = false;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private long maxShardRows = 0, maxShardSize = 0;
+    private int shardWriterThreads = 2;
+    private boolean iriDictionaryOutput = false;
+    private Charset charset = StandardCharsets.UTF_8;
+    private int writeBufferSize = WRITE_BUFFER_SIZE;
+    private OWLReasonerManager reasonerManager;
+    private OWLReasoner reasoner;
+    private boolean includeInferredSuperclasses = false, includeInferredTypes = false, includeAncestors = false;
+    private HierarchySource ancestorsHierarchy = HierarchySource.ASSERTED;
 
     /**
-     * Constructor
+     * Constructor for exports of the active ontology using the current Protégé renderers and reasoner
      *
      * @param editorKit OWL editor kit
      * @param outputFile    Csv output file
      */
     public CsvExporterBuilder(OWLEditorKit editorKit, File outputFile) {
-        this.editorKit = checkNotNull(editorKit);
+        this(checkNotNull(editorKit).getModelManager().getActiveOntology(), new ProtegeExportRenderer(editorKit.getModelManager()), outputFile);
+        this.reasonerManager = editorKit.getModelManager().getOWLReasonerManager();
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ont   OWL ontology to export from
+     * @param renderer  Renderer for entities and other OWL objects
+     * @param outputFile    Csv output file
+     */
+    public CsvExporterBuilder(OWLOntology ont, ExportRenderer renderer, File outputFile) {
+        this.ont = checkNotNull(ont);
+        this.renderer = checkNotNull(renderer);
         this.outputFile = checkNotNull(outputFile);
     }
 
-    public CsvExporterBuilder setOutputProperties(List<OWLEntity> output) {
+    /**
+     * Set the entities to export. Any iterable can be given, such as a {@link SubclassTreeSelection}
+     * that finds the entities as they are exported.
+     *
+     * @param output    Entities to export
+     */
+    public CsvExporterBuilder setOutputProperties(Iterable<OWLEntity> output) {
         this.output = output;
         return this;
     }
@@ -85,8 +128,155 @@ public class CsvExporterBuilder {
         return this;
     }
 
+    public CsvExporterBuilder setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public CsvExporterBuilder setRenderingCacheSize(long renderingCacheSize) {
+        this.renderingCacheSize = renderingCacheSize;
+        return this;
+    }
+
+    public CsvExporterBuilder setProgressMonitor(ExportProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+        return this;
+    }
+
+    public CsvExporterBuilder setGzipOutput(boolean gzipOutput) {
+        this.gzipOutput = gzipOutput;
+        return this;
+    }
+
+    public CsvExporterBuilder setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * Split the output into shards of at most the given number of rows each, see {@link ShardedRowSink}
+     *
+     * @param maxShardRows  Maximum number of rows per shard, or 0 for no limit
+     */
+    public CsvExporterBuilder setMaxShardRows(long maxShardRows) {
+        this.maxShardRows = maxShardRows;
+        return this;
+    }
+
+    /**
+     * Split the output into shards of about the given number of bytes each (after compression, including the
+     * header), see {@link ShardedRowSink}
+     *
+     * @param maxShardSize  Maximum number of bytes per shard, or 0 for no limit
+     */
+    public CsvExporterBuilder setMaxShardSize(long maxShardSize) {
+        this.maxShardSize = maxShardSize;
+        return this;
+    }
+
+    public CsvExporterBuilder setShardWriterThreads(int shardWriterThreads) {
+        this.shardWriterThreads = shardWriterThreads;
+        return this;
+    }
+
+    /**
+     * Write the entity, superclass and named filler columns as integer ids, and list the IRI of each id in a separate
+     * dictionary file (see {@link CsvExporter#getIriDictionaryFile()}). Requires entities to be rendered as IRIs.
+     *
+     * @param iriDictionaryOutput   true if the output should be dictionary-encoded, false otherwise
+     */
+    public CsvExporterBuilder setIriDictionaryOutput(boolean iriDictionaryOutput) {
+        this.iriDictionaryOutput = iriDictionaryOutput;
+        return this;
+    }
+
+    public CsvExporterBuilder setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Set the size of the buffer into which the output is encoded before it is written to the file. Larger buffers
+     * mean fewer, larger writes, which helps most on network file systems.
+     *
+     * @param writeBufferSize   Buffer size in bytes
+     */
+    public CsvExporterBuilder setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    /**
+     * Set the reasoner from which inferred superclasses and types are taken. Exports built from an editor kit use
+     * the reasoner currently selected in Protégé unless another one is set, and can only include inferred columns
+     * if that reasoner is in sync with the ontology.
+     *
+     * @param reasoner  Reasoner, which must have classified the ontology already (and computed the types of
+     *                  individuals, if these are included)
+     */
+    public CsvExporterBuilder setReasoner(OWLReasoner reasoner) {
+        this.reasoner = reasoner;
+        return this;
+    }
+
+    public CsvExporterBuilder setIncludeInferredSuperclasses(boolean includeInferredSuperclasses) {
+        this.includeInferredSuperclasses = includeInferredSuperclasses;
+        return this;
+    }
+
+    public CsvExporterBuilder setIncludeInferredTypes(boolean includeInferredTypes) {
+        this.includeInferredTypes = includeInferredTypes;
+        return this;
+    }
+
+    /**
+     * Include a column with all ancestors of each class, not just its direct superclasses, taken from the hierarchy
+     * set by {@link #setAncestorsHierarchy(HierarchySource)}
+     *
+     * @param includeAncestors  true if the ancestors column should be included, false otherwise
+     */
+    public CsvExporterBuilder setIncludeAncestors(boolean includeAncestors) {
+        this.includeAncestors = includeAncestors;
+        return this;
+    }
+
+    /**
+     * Set the class hierarchy from which the ancestors column is taken. The inferred hierarchy requires a reasoner,
+     * as inferred superclasses do. The default is the asserted hierarchy.
+     *
+     * @param ancestorsHierarchy    Class hierarchy of the ancestors column
+     */
+    public CsvExporterBuilder setAncestorsHierarchy(HierarchySource ancestorsHierarchy) {
+        this.ancestorsHierarchy = ancestorsHierarchy;
+        return this;
+    }
+
+    /**
+     * Build the exporter. If inferred columns are included, this only checks that the reasoner has classified the
+     * ontology and, in Protégé, is in sync with it; the inferred hierarchy is read from the reasoner by the export
+     * itself (see {@link CsvExporter#export()}), so that building an exporter on the event dispatch thread does not
+     * freeze Protégé while a large hierarchy is walked.
+     *
+     * @return CSV exporter
+     * @throws IllegalStateException if inferred columns are included and the reasoner has not classified the
+     * ontology or, in Protégé, is not in sync with it
+     */
     public CsvExporter build() {
-        return new CsvExporter(editorKit, outputFile, output, properties, fileDelimiter, propertyValuesDelimiter, includeHeaders, includeEntityTypes,
-                useCurrentRendering, includeSuperclasses, includeCustomText, customText);
+        OWLReasoner reasoner = null;
+        if(includeInferredSuperclasses || includeInferredTypes || (includeAncestors && ancestorsHierarchy == HierarchySource.INFERRED)) {
+            reasoner = this.reasoner;
+            if(reasoner == null && reasonerManager != null) {
+                ReasonerStatus status = reasonerManager.getReasonerStatus();
+                checkState(status == ReasonerStatus.INITIALIZED, "Inferred columns require a reasoner that is in sync with the ontology; reasoner status: %s", status);
+                reasoner = reasonerManager.getCurrentReasoner();
+            }
+            checkState(reasoner != null, "Inferred columns require a reasoner");
+            InferredHierarchyIndex.checkReasoner(reasoner, includeInferredTypes);
+        }
+        return new CsvExporter(ont, renderer, outputFile, output, properties, fileDelimiter, propertyValuesDelimiter, includeHeaders, includeEntityTypes,
+                useCurrentRendering, includeSuperclasses, includeCustomText, customText, parallelism,
+                renderingCacheSize, progressMonitor, gzipOutput, compressionThreads, maxShardRows, maxShardSize, shardWriterThreads, iriDictionaryOutput,
+                charset, writeBufferSize, reasoner, includeInferredSuperclasses, includeInferredTypes,
+                includeAncestors, ancestorsHierarchy);
     }
-}
\ No newline at end of file
+}
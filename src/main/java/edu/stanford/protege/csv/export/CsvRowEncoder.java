@@ -0,0 +1,363 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Assembles CSV rows in a single reusable character buffer. Cells, value delimiters and row
+ * terminators are appended in place, and the buffer is handed to the output writer in large
+ * blocks, so that no intermediate strings are created per cell or per row.
+ * <br>
+ * Cells are escaped as described in RFC 4180: a cell that contains the file delimiter, a double quote or a line
+ * break is enclosed in double quotes, and the double quotes inside it are doubled. With a multi-character file
+ * delimiter, a cell that is followed by the delimiter is also quoted if it ends with a proper prefix of the
+ * delimiter, since the delimiter would otherwise be found starting inside the cell. Other cells are written as they
+ * are. Values are checked for these characters as they are appended, in a single pass without regular expressions,
+ * and a cell that needs quotes is rewritten in place in the buffer. The time spent escaping can be summed for
+ * selected rows, so that it can be reported apart from the time spent rendering, see {@link #setTimingEscapes}.
+ * Since reading the clock costs about as much as checking a short value, only a sample of the rows should be timed.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class CsvRowEncoder {
+    private static final int DEFAULT_FLUSH_THRESHOLD = 1 << 16;
+    private final String fileDelimiter, propertyValuesDelimiter;
+    private final int flushThreshold;
+    private final StringBuilder buffer;
+    private char[] scratch = new char[0];
+    private int[] rowEnds = new int[256];
+    private final char delimiterChar;
+    private final boolean valuesDelimiterNeedsQuotes;
+    private int cellValueCount, cellStart, rowCount;
+    private long escapeNanos;
+    private boolean timingEscapes;
+    private boolean cellNeedsQuotes;
+
+    /**
+     * Constructor
+     *
+     * @param fileDelimiter Primary delimiter for entries
+     * @param propertyValuesDelimiter   Delimiter for the (potentially multiple) values in a cell
+     */
+    CsvRowEncoder(String fileDelimiter, String propertyValuesDelimiter) {
+        this(fileDelimiter, propertyValuesDelimiter, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param fileDelimiter Primary delimiter for entries
+     * @param propertyValuesDelimiter   Delimiter for the (potentially multiple) values in a cell
+     * @param flushThreshold    Number of buffered characters after which {@link #isFull()} returns true
+     */
+    CsvRowEncoder(String fileDelimiter, String propertyValuesDelimiter, int flushThreshold) {
+        this.fileDelimiter = checkNotNull(fileDelimiter);
+        this.propertyValuesDelimiter = checkNotNull(propertyValuesDelimiter);
+        this.flushThreshold = flushThreshold;
+        this.delimiterChar = (fileDelimiter.length() == 1 ? fileDelimiter.charAt(0) : '"'); // a quote is checked for anyway
+        this.valuesDelimiterNeedsQuotes = needsQuotes(propertyValuesDelimiter) ||
+                (fileDelimiter.length() > 0 && propertyValuesDelimiter.contains(fileDelimiter));
+        this.buffer = new StringBuilder(flushThreshold + 1024);
+    }
+
+    /**
+     * Append a single-valued cell followed by the file delimiter
+     */
+    void appendCell(CharSequence value) {
+        int start = buffer.length();
+        buffer.append(value);
+        endCell(start, checkValue(value), true);
+        buffer.append(fileDelimiter);
+    }
+
+    /**
+     * Append a single-valued cell that ends the row, so it is not followed by the file delimiter
+     */
+    void appendLastCell(CharSequence value) {
+        int start = buffer.length();
+        buffer.append(value);
+        endCell(start, checkValue(value), false);
+    }
+
+    /**
+     * Start a cell that may hold several values separated by the property values delimiter
+     */
+    void beginValues() {
+        cellValueCount = 0;
+        cellStart = buffer.length();
+        cellNeedsQuotes = false;
+    }
+
+    /**
+     * Append a value to the current multi-valued cell
+     */
+    void appendValue(CharSequence value) {
+        if(cellValueCount > 0) {
+            appendValuesDelimiter();
+        }
+        buffer.append(value);
+        cellNeedsQuotes |= checkValue(value);
+        cellValueCount++;
+    }
+
+    /**
+     * Append a value to the current multi-valued cell, enclosing it in single quotes
+     */
+    void appendQuotedValue(CharSequence value) {
+        if(cellValueCount > 0) {
+            appendValuesDelimiter();
+        }
+        buffer.append('\'').append(value).append('\'');
+        cellNeedsQuotes |= checkValue(value);
+        cellValueCount++;
+    }
+
+    /**
+     * End the current multi-valued cell, enclosing it in double quotes if any of its values requires it
+     */
+    void endValues() {
+        endCell(cellStart, cellNeedsQuotes, true);
+        buffer.append(fileDelimiter);
+    }
+
+    private void appendValuesDelimiter() {
+        buffer.append(propertyValuesDelimiter);
+        cellNeedsQuotes |= valuesDelimiterNeedsQuotes;
+    }
+
+    /**
+     * Check whether a value contains a double quote, a line break or the (single-character) file delimiter. A
+     * multi-character file delimiter is looked for in the whole cell once it is complete, by {@link #endCell}.
+     */
+    private boolean needsQuotes(CharSequence value) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\n' || c == '\r' || c == delimiterChar) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a value needs quotes, adding the time taken to the escape time if escapes are being timed
+     */
+    private boolean checkValue(CharSequence value) {
+        if(!timingEscapes) {
+            return needsQuotes(value);
+        }
+        long start = System.nanoTime();
+        boolean needsQuotes = needsQuotes(value);
+        escapeNanos += System.nanoTime() - start;
+        return needsQuotes;
+    }
+
+    /**
+     * Quote the cell from the given offset to the end of the buffer if it needs quotes
+     *
+     * @param start Offset of the cell
+     * @param needsQuotes   true if a value of the cell was found to need quotes
+     * @param followedByDelimiter   true if the file delimiter is appended after the cell
+     */
+    private void endCell(int start, boolean needsQuotes, boolean followedByDelimiter) {
+        long escapeStart = (timingEscapes ? System.nanoTime() : 0);
+        if(needsQuotes || (fileDelimiter.length() > 1 && (buffer.indexOf(fileDelimiter, start) >= 0 ||
+                (followedByDelimiter && endsWithDelimiterPrefix(start))))) {
+            quote(start);
+        }
+        if(timingEscapes) {
+            escapeNanos += System.nanoTime() - escapeStart;
+        }
+    }
+
+    /**
+     * Check whether the cell from the given offset to the end of the buffer ends with a proper prefix of the file
+     * delimiter. For example, with the delimiter {@code ||}, the cells {@code a|} and {@code b} would be written as
+     * {@code a|||b}, which reads back as {@code a} and {@code |b}.
+     */
+    private boolean endsWithDelimiterPrefix(int start) {
+        int end = buffer.length();
+        for(int length = Math.min(fileDelimiter.length() - 1, end - start); length > 0; length--) {
+            int i = 0;
+            while(i < length && buffer.charAt(end - length + i) == fileDelimiter.charAt(i)) {
+                i++;
+            }
+            if(i == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Enclose the characters from the given offset to the end of the buffer in double quotes, doubling the double
+     * quotes among them. The characters are shifted in place, from the end, so that no copy of the cell is made.
+     */
+    private void quote(int start) {
+        int end = buffer.length(), quotes = 0;
+        for(int i = start; i < end; i++) {
+            if(buffer.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        buffer.setLength(end + quotes + 2);
+        int to = end + quotes + 1;
+        buffer.setCharAt(to--, '"');
+        for(int from = end - 1; from >= start; from--) {
+            char c = buffer.charAt(from);
+            buffer.setCharAt(to--, c);
+            if(c == '"') {
+                buffer.setCharAt(to--, '"');
+            }
+        }
+        buffer.setCharAt(to, '"');
+    }
+
+    void appendRaw(CharSequence text) {
+        buffer.append(text);
+    }
+
+    void endRow() {
+        buffer.append('\n');
+        if(rowCount == rowEnds.length) {
+            rowEnds = Arrays.copyOf(rowEnds, rowCount * 2);
+        }
+        rowEnds[rowCount++] = buffer.length();
+    }
+
+    /**
+     * Get the buffered text as a string and clear the buffer for reuse
+     */
+    String takeContents() {
+        String contents = buffer.toString();
+        clear();
+        return contents;
+    }
+
+    int length() {
+        return buffer.length();
+    }
+
+    /**
+     * Start or stop timing the escaping of the cells subsequently appended
+     */
+    void setTimingEscapes(boolean timingEscapes) {
+        this.timingEscapes = timingEscapes;
+    }
+
+    /**
+     * Get the total time spent escaping the cells appended to this encoder while escapes were timed, in nanoseconds
+     */
+    long getEscapeNanos() {
+        return escapeNanos;
+    }
+
+    /**
+     * Check whether the buffer has grown beyond the flush threshold and should be written out
+     */
+    boolean isFull() {
+        return buffer.length() >= flushThreshold;
+    }
+
+    /**
+     * Get the number of rows ended in the buffer since it was last cleared
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the buffer offset just past the line break that ended the given row
+     */
+    int getRowEnd(int row) {
+        return rowEnds[row];
+    }
+
+    /**
+     * Write out the buffered characters between the given offsets, leaving the buffer unchanged
+     */
+    void write(Writer writer, int start, int end) throws IOException {
+        int length = end - start;
+        if(length == 0) {
+            return;
+        }
+        if(scratch.length < length) {
+            scratch = new char[Math.max(length, flushThreshold + 1024)];
+        }
+        buffer.getChars(start, end, scratch, 0);
+        writer.write(scratch, 0, length);
+    }
+
+    /**
+     * Copy the buffered characters between the given offsets into a new array, leaving the buffer unchanged
+     */
+    char[] copy(int start, int end) {
+        char[] chars = new char[end - start];
+        buffer.getChars(start, end, chars, 0);
+        return chars;
+    }
+
+    /**
+     * Replace each reference in the buffer, a number enclosed in the given mark, with the text given for that number,
+     * keeping the row ends in step. References are replaced in the order in which they occur in the buffer.
+     *
+     * @param mark  Character before and after the number of a reference, which does not occur otherwise
+     * @param replacement   Gives the text that replaces a reference with the given number
+     */
+    void replaceReferences(char mark, IntFunction<String> replacement) {
+        int length = buffer.length();
+        if(scratch.length < length) {
+            scratch = new char[Math.max(length, flushThreshold + 1024)];
+        }
+        buffer.getChars(0, length, scratch, 0);
+        buffer.setLength(0);
+        int row = 0, from = 0;
+        for(int i = 0; i < length; i++) {
+            if(scratch[i] != mark) {
+                continue;
+            }
+            row = moveRowEnds(row, i, buffer.length() + i - from);
+            buffer.append(scratch, from, i - from);
+            int number = 0;
+            for(i++; scratch[i] != mark; i++) {
+                number = number * 10 + (scratch[i] - '0');
+            }
+            buffer.append(replacement.apply(number));
+            from = i + 1;
+        }
+        moveRowEnds(row, length, buffer.length() + length - from);
+        buffer.append(scratch, from, length - from);
+    }
+
+    /**
+     * Shift the ends of the rows from the given one on that end at or before the given old offset, so that the old
+     * offset maps to the given new offset
+     *
+     * @return Index of the first row not shifted
+     */
+    private int moveRowEnds(int row, int oldOffset, int newOffset) {
+        for(; row < rowCount && rowEnds[row] <= oldOffset; row++) {
+            rowEnds[row] += newOffset - oldOffset;
+        }
+        return row;
+    }
+
+    void clear() {
+        buffer.setLength(0);
+        rowCount = 0;
+    }
+
+    /**
+     * Write out all buffered rows and clear the buffer for reuse
+     */
+    void flush(Writer writer) throws IOException {
+        write(writer, 0, buffer.length());
+        clear();
+    }
+}
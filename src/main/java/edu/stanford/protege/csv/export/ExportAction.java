@@ -1,13 +1,11 @@
 package edu.stanford.protege.csv.export;
 
 import edu.stanford.protege.csv.export.ui.ExportDialogPanel;
-import org.protege.editor.core.ui.error.ErrorLogPanel;
 import org.protege.editor.owl.OWLEditorKit;
 import org.protege.editor.owl.ui.action.ProtegeOWLAction;
 import org.semanticweb.owlapi.model.OWLEntity;
 
 import java.awt.event.ActionEvent;
-import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -34,11 +32,7 @@ public class ExportAction extends ProtegeOWLAction {
         } else {
             list = Collections.emptyList();
         }
-        try {
-            ExportDialogPanel.showDialog(editorKit, "Export of entity selection", list, true);
-        } catch (IOException ex) {
-            ErrorLogPanel.showErrorDialog(ex);
-        }
+        ExportDialogPanel.showDialog(editorKit, "Export of entity selection", list, true);
     }
 
     @Override
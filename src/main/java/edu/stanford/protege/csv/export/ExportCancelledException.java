@@ -0,0 +1,18 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link CsvExporter#export()} when the export was cancelled through its {@link ExportProgressMonitor}
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ExportCancelledException extends IOException {
+    private static final long serialVersionUID = -2309875622381763424L;
+
+    public ExportCancelledException() {
+        super("Export cancelled");
+    }
+}
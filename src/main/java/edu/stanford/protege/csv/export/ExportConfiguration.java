@@ -0,0 +1,170 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Saved export configuration, read from a Java properties file, that describes which entities and properties to
+ * export and how to format the output. Entities and properties are given by their IRIs, so that the same
+ * configuration can be applied to several ontologies. The recognized keys are:
+ * <ul>
+ *     <li>{@code entities}: whitespace-separated IRIs of the entities to export, or one of {@code classes},
+ *     {@code individuals} or {@code all} to export all such entities in the signature of the ontology (default {@code classes})</li>
+ *     <li>{@code properties}: whitespace-separated IRIs of the properties whose values should be exported</li>
+ *     <li>{@code fileDelimiter}, {@code propertyValuesDelimiter}: delimiters, which may use escapes such as {@code \t}</li>
+ *     <li>{@code includeHeaders}, {@code includeEntityTypes}, {@code useCurrentRendering}, {@code includeSuperclasses},
+ *     {@code includeAncestors}, {@code includeCustomText}: true or false</li>
+ *     <li>{@code ancestorsHierarchy}: {@code asserted}, the class hierarchy of the ancestors column. Saved configurations
+ *     are applied without a reasoner, so the inferred hierarchy is rejected.</li>
+ *     <li>{@code customText}: custom text to include in the last row of the file</li>
+ *     <li>{@code parallelism}, {@code renderingCacheSize}: performance settings, see {@link CsvExporterBuilder}</li>
+ *     <li>{@code charset}: charset of the output (default UTF-8), and {@code writeBufferSize}: size of the output buffer in bytes</li>
+ *     <li>{@code gzipOutput}: true to write gzip-compressed output, and {@code compressionThreads}: number of threads compressing it</li>
+ *     <li>{@code iriDictionaryOutput}: true to write entities as ids listed in a separate IRI dictionary file</li>
+ *     <li>{@code maxShardRows}, {@code maxShardSize}, {@code shardWriterThreads}: sharded output settings, see {@link CsvExporterBuilder}</li>
+ * </ul>
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ExportConfiguration {
+    private static final String ALL_CLASSES = "classes", ALL_INDIVIDUALS = "individuals", ALL_ENTITIES = "all";
+    private final Properties properties;
+
+    /**
+     * Constructor
+     *
+     * @param properties    Configuration properties
+     * @throws IllegalArgumentException if the properties ask for a class hierarchy that needs a reasoner
+     */
+    public ExportConfiguration(Properties properties) {
+        this.properties = checkNotNull(properties);
+        getAncestorsHierarchy();
+    }
+
+    /**
+     * Load an export configuration from a properties file
+     *
+     * @param file  Properties file
+     * @return Export configuration
+     * @throws IOException if the file could not be read
+     */
+    public static ExportConfiguration load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new ExportConfiguration(properties);
+    }
+
+    /**
+     * Create a builder for an export of the given ontology, configured according to this configuration
+     *
+     * @param ont   OWL ontology to export from
+     * @param renderer  Renderer for entities and other OWL objects
+     * @param outputFile    Csv output file
+     * @return Configured CSV exporter builder
+     */
+    public CsvExporterBuilder newBuilder(OWLOntology ont, ExportRenderer renderer, File outputFile) {
+        CsvExporterBuilder builder = new CsvExporterBuilder(ont, renderer, outputFile)
+                .setOutputProperties(getEntities(ont))
+                .setProperties(getEntities(ont, properties.getProperty("properties", "")))
+                .setFileDelimiter(properties.getProperty("fileDelimiter", CsvExporterBuilder.FILE_DELIMITER))
+                .setPropertyValuesDelimiter(properties.getProperty("propertyValuesDelimiter", CsvExporterBuilder.PROPERTY_VALUES_DELIMITER))
+                .setIncludeHeaders(getBoolean("includeHeaders"))
+                .setIncludeEntityTypes(getBoolean("includeEntityTypes"))
+                .setUseCurrentRendering(getBoolean("useCurrentRendering"))
+                .setIncludeSuperclasses(getBoolean("includeSuperclasses"))
+                .setIncludeAncestors(getBoolean("includeAncestors"))
+                .setIncludeCustomText(getBoolean("includeCustomText"))
+                .setCustomText(properties.getProperty("customText", ""));
+        builder.setAncestorsHierarchy(getAncestorsHierarchy());
+        if(properties.containsKey("parallelism")) {
+            builder.setParallelism(Integer.parseInt(properties.getProperty("parallelism").trim()));
+        }
+        if(properties.containsKey("renderingCacheSize")) {
+            builder.setRenderingCacheSize(Long.parseLong(properties.getProperty("renderingCacheSize").trim()));
+        }
+        builder.setGzipOutput(isGzipOutput());
+        builder.setIriDictionaryOutput(getBoolean("iriDictionaryOutput"));
+        if(properties.containsKey("compressionThreads")) {
+            builder.setCompressionThreads(Integer.parseInt(properties.getProperty("compressionThreads").trim()));
+        }
+        if(properties.containsKey("charset")) {
+            builder.setCharset(Charset.forName(properties.getProperty("charset").trim()));
+        }
+        if(properties.containsKey("writeBufferSize")) {
+            builder.setWriteBufferSize(Integer.parseInt(properties.getProperty("writeBufferSize").trim()));
+        }
+        if(properties.containsKey("maxShardRows")) {
+            builder.setMaxShardRows(Long.parseLong(properties.getProperty("maxShardRows").trim()));
+        }
+        if(properties.containsKey("maxShardSize")) {
+            builder.setMaxShardSize(Long.parseLong(properties.getProperty("maxShardSize").trim()));
+        }
+        if(properties.containsKey("shardWriterThreads")) {
+            builder.setShardWriterThreads(Integer.parseInt(properties.getProperty("shardWriterThreads").trim()));
+        }
+        return builder;
+    }
+
+    /**
+     * Check whether exports with this configuration are gzip-compressed
+     *
+     * @return true if the output should be gzip-compressed, false otherwise
+     */
+    public boolean isGzipOutput() {
+        return getBoolean("gzipOutput");
+    }
+
+    private List<OWLEntity> getEntities(OWLOntology ont) {
+        String entities = properties.getProperty("entities", ALL_CLASSES).trim();
+        List<OWLEntity> list = new ArrayList<>();
+        switch (entities) {
+            case ALL_CLASSES:
+                list.addAll(ont.getClassesInSignature(Imports.EXCLUDED));
+                break;
+            case ALL_INDIVIDUALS:
+                list.addAll(ont.getIndividualsInSignature(Imports.EXCLUDED));
+                break;
+            case ALL_ENTITIES:
+                list.addAll(ont.getSignature(Imports.EXCLUDED));
+                break;
+            default:
+                return getEntities(ont, entities);
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    private List<OWLEntity> getEntities(OWLOntology ont, String iris) {
+        List<OWLEntity> entities = new ArrayList<>();
+        for(String iri : iris.trim().split("\\s+")) {
+            if(!iri.isEmpty()) {
+                entities.addAll(ont.getEntitiesInSignature(IRI.create(iri), Imports.INCLUDED));
+            }
+        }
+        return entities;
+    }
+
+    private HierarchySource getAncestorsHierarchy() {
+        String value = properties.getProperty("ancestorsHierarchy", "asserted").trim();
+        checkArgument(!value.equalsIgnoreCase(HierarchySource.INFERRED.name()),
+                "ancestorsHierarchy=%s requires a reasoner, which saved configurations are not applied with; use asserted", value);
+        checkArgument(value.equalsIgnoreCase(HierarchySource.ASSERTED.name()), "Unknown ancestorsHierarchy: %s", value);
+        return HierarchySource.ASSERTED;
+    }
+
+    private boolean getBoolean(String key) {
+        return Boolean.parseBoolean(properties.getProperty(key, "false").trim());
+    }
+}
@@ -0,0 +1,191 @@
+package edu.stanford.protege.csv.export;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters of a single export. The phases are: setup (building the indexes used by the export),
+ * scan (walking the axioms of each entity for property values), render (rendering and encoding the cells of
+ * each row), escape (checking cells for characters that need quotes, and quoting them) and write (handing encoded
+ * rows to the output). Scan, render and escape times are summed over all threads rendering rows, so with several
+ * threads they can exceed the total time of the export. Escape time is estimated from a sample of the rows, whose
+ * escaping is timed, and is reported apart from render time: render time is measured with escaping included, and the
+ * estimated escape time is taken off it. Bytes are counted as written to the output files, that is, after
+ * compression.
+ * <br>
+ * Allocated bytes are measured with the platform threading MBean, for the thread that runs the export and every thread
+ * that renders rows, until the export is finished, so they include the trailer and the IRI dictionary. The MBean is
+ * queried through JMX rather than through {@code com.sun.management}, which is not necessarily visible to OSGi bundles.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ExportMetrics {
+    private final LongAdder setupNanos = new LongAdder(), scanNanos = new LongAdder(), renderNanos = new LongAdder(), escapeNanos = new LongAdder(), writeNanos = new LongAdder();
+    private final LongAdder rows = new LongAdder(), cells = new LongAdder(), values = new LongAdder(), bytes = new LongAdder();
+    private final Map<Long, Long> allocationBaselines = new ConcurrentHashMap<>();
+    private final long startNanos = System.nanoTime();
+    private volatile long allocatedBytes = 0, totalNanos = -1;
+
+    void addSetupTime(long nanos) {
+        setupNanos.add(nanos);
+    }
+
+    void addScanTime(long nanos) {
+        scanNanos.add(nanos);
+    }
+
+    void addRenderTime(long nanos) {
+        renderNanos.add(nanos);
+    }
+
+    void addEscapeTime(long nanos) {
+        escapeNanos.add(nanos);
+    }
+
+    void addWriteTime(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    /**
+     * Count a rendered row
+     *
+     * @param cellCount Number of cells in the row
+     * @param valueCount    Number of values in the multi-valued cells of the row
+     */
+    void addRow(int cellCount, int valueCount) {
+        rows.increment();
+        cells.add(cellCount);
+        values.add(valueCount);
+    }
+
+    void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Start measuring the allocations of the current thread, if they are not measured already
+     */
+    void startAllocationMeasurement() {
+        long threadId = Thread.currentThread().getId();
+        if(allocatedBytes >= 0 && !allocationBaselines.containsKey(threadId)) {
+            long baseline = getAllocatedBytes(threadId);
+            if(baseline < 0) {
+                allocatedBytes = -1;
+            } else {
+                allocationBaselines.put(threadId, baseline);
+            }
+        }
+    }
+
+    /**
+     * Add the allocations of all measured threads since their measurement started, and stop measuring them.
+     * Must be called while these threads are still alive.
+     */
+    void finishAllocationMeasurement() {
+        for(Map.Entry<Long, Long> entry : allocationBaselines.entrySet()) {
+            long allocated = getAllocatedBytes(entry.getKey());
+            if(allocated < 0 || allocatedBytes < 0) {
+                allocatedBytes = -1;
+            } else {
+                allocatedBytes += allocated - entry.getValue();
+            }
+        }
+        allocationBaselines.clear();
+    }
+
+    /**
+     * Mark the export as finished, which fixes its total time
+     */
+    void finish() {
+        finishAllocationMeasurement();
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    long getSetupMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(setupNanos.sum());
+    }
+
+    long getScanMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(scanNanos.sum());
+    }
+
+    long getRenderMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, renderNanos.sum() - escapeNanos.sum()));
+    }
+
+    long getEscapeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(escapeNanos.sum());
+    }
+
+    long getWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum());
+    }
+
+    long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(totalNanos, 0));
+    }
+
+    long getRowCount() {
+        return rows.sum();
+    }
+
+    long getCellCount() {
+        return cells.sum();
+    }
+
+    long getValueCount() {
+        return values.sum();
+    }
+
+    long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * Get the number of bytes allocated by the threads rendering rows
+     *
+     * @return Allocated bytes, or -1 if allocation measurement is not available
+     */
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Get the number of bytes allocated per row written, the figure to track across versions of the export
+     *
+     * @return Allocated bytes per row, or -1 if allocation measurement is not available or no rows were written
+     */
+    long getAllocatedBytesPerRow() {
+        long rowCount = getRowCount();
+        return (allocatedBytes >= 0 && rowCount > 0 ? allocatedBytes / rowCount : -1);
+    }
+
+    /**
+     * Summarise the metrics in a single line of space-separated key=value pairs
+     */
+    String toLogString() {
+        long totalMillis = getTotalMillis(), rowCount = getRowCount();
+        return "rows=" + rowCount + " cells=" + getCellCount() + " values=" + getValueCount() + " bytes=" + getByteCount() +
+                " allocatedBytes=" + allocatedBytes + " allocatedBytesPerRow=" + getAllocatedBytesPerRow() + " totalMs=" + totalMillis + " setupMs=" + getSetupMillis() +
+                " scanMs=" + getScanMillis() + " renderMs=" + getRenderMillis() + " escapeMs=" + getEscapeMillis() + " writeMs=" + getWriteMillis() +
+                " rowsPerSecond=" + (totalMillis > 0 ? rowCount * 1000 / totalMillis : rowCount);
+    }
+
+    private static long getAllocatedBytes(long threadId) {
+        try {
+            Object allocated = ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME), "getThreadAllocatedBytes",
+                    new Object[]{threadId}, new String[]{long.class.getName()});
+            return (allocated instanceof Long ? (Long) allocated : -1);
+        } catch (JMException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package edu.stanford.protege.csv.export;
+
+/**
+ * Management interface of the export metrics published over JMX under the name
+ * {@code edu.stanford.protege.csv.export:type=ExportMetrics}. The "last export" attributes describe the most
+ * recently completed export; the totals cover all exports since the plugin was loaded.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public interface ExportMetricsMXBean {
+
+    long getExportCount();
+
+    long getTotalRowCount();
+
+    long getTotalByteCount();
+
+    long getTotalMillis();
+
+    String getLastOutputFile();
+
+    long getLastRowCount();
+
+    long getLastCellCount();
+
+    long getLastValueCount();
+
+    long getLastByteCount();
+
+    /**
+     * @return Bytes allocated by the threads that rendered rows in the last export, or -1 if not measured
+     */
+    long getLastAllocatedBytes();
+
+    /**
+     * @return Bytes allocated per row written in the last export, or -1 if not measured
+     */
+    long getLastAllocatedBytesPerRow();
+
+    long getLastTotalMillis();
+
+    long getLastSetupMillis();
+
+    long getLastScanMillis();
+
+    long getLastRenderMillis();
+
+    long getLastEscapeMillis();
+
+    long getLastWriteMillis();
+}
@@ -0,0 +1,159 @@
+package edu.stanford.protege.csv.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the metrics of completed exports through the platform MBean server. The MBean is registered when the
+ * first export completes; if a previous instance of the plugin left one registered, it is replaced.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ExportMetricsPublisher implements ExportMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(ExportMetricsPublisher.class.getName());
+    static final String OBJECT_NAME = "edu.stanford.protege.csv.export:type=ExportMetrics";
+    private static final ExportMetricsPublisher instance = new ExportMetricsPublisher();
+    private final AtomicLong exportCount = new AtomicLong(), totalRows = new AtomicLong(), totalBytes = new AtomicLong(), totalMillis = new AtomicLong();
+    private volatile ExportMetrics last = new ExportMetrics();
+    private volatile String lastOutputFile = "";
+    private boolean registered = false; // guarded by this
+
+    private ExportMetricsPublisher() {
+    }
+
+    /**
+     * Publish the metrics of a completed export
+     *
+     * @param outputFile    Output file of the export
+     * @param metrics   Metrics of the export
+     */
+    static void publish(File outputFile, ExportMetrics metrics) {
+        instance.record(checkNotNull(outputFile), checkNotNull(metrics));
+    }
+
+    private void record(File outputFile, ExportMetrics metrics) {
+        register();
+        last = metrics;
+        lastOutputFile = outputFile.getAbsolutePath();
+        exportCount.incrementAndGet();
+        totalRows.addAndGet(metrics.getRowCount());
+        totalBytes.addAndGet(metrics.getByteCount());
+        totalMillis.addAndGet(metrics.getTotalMillis());
+    }
+
+    private synchronized void register() {
+        if(registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            logger.warn("Could not register export metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public long getExportCount() {
+        return exportCount.get();
+    }
+
+    @Override
+    public long getTotalRowCount() {
+        return totalRows.get();
+    }
+
+    @Override
+    public long getTotalByteCount() {
+        return totalBytes.get();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    @Override
+    public String getLastOutputFile() {
+        return lastOutputFile;
+    }
+
+    @Override
+    public long getLastRowCount() {
+        return last.getRowCount();
+    }
+
+    @Override
+    public long getLastCellCount() {
+        return last.getCellCount();
+    }
+
+    @Override
+    public long getLastValueCount() {
+        return last.getValueCount();
+    }
+
+    @Override
+    public long getLastByteCount() {
+        return last.getByteCount();
+    }
+
+    @Override
+    public long getLastAllocatedBytes() {
+        return last.getAllocatedBytes();
+    }
+
+    @Override
+    public long getLastAllocatedBytesPerRow() {
+        return last.getAllocatedBytesPerRow();
+    }
+
+    @Override
+    public long getLastTotalMillis() {
+        return last.getTotalMillis();
+    }
+
+    @Override
+    public long getLastSetupMillis() {
+        return last.getSetupMillis();
+    }
+
+    @Override
+    public long getLastScanMillis() {
+        return last.getScanMillis();
+    }
+
+    @Override
+    public long getLastRenderMillis() {
+        return last.getRenderMillis();
+    }
+
+    @Override
+    public long getLastEscapeMillis() {
+        return last.getEscapeMillis();
+    }
+
+    @Override
+    public long getLastWriteMillis() {
+        return last.getWriteMillis();
+    }
+}
@@ -0,0 +1,42 @@
+package edu.stanford.protege.csv.export;
+
+/**
+ * Receives progress reports from a running export and can request its cancellation. Reports are made
+ * periodically from the thread that runs the export, not for every row.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public interface ExportProgressMonitor {
+
+    /**
+     * Monitor that ignores progress reports and never cancels the export
+     */
+    ExportProgressMonitor NO_OP = new ExportProgressMonitor() {
+        @Override
+        public void rowsExported(long rowsDone, long totalRows) { }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Report the number of rows written so far
+     *
+     * @param rowsDone  Number of rows written
+     * @param totalRows Total number of rows to write, or -1 if unknown
+     */
+    void rowsExported(long rowsDone, long totalRows);
+
+    /**
+     * Check whether the export should be cancelled. A cancelled export stops at the next progress report,
+     * removes its partial output file and throws an {@link ExportCancelledException}.
+     *
+     * @return true if the export should be cancelled, false otherwise
+     */
+    boolean isCancelled();
+
+}
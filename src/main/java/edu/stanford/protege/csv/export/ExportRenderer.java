@@ -0,0 +1,32 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Renders the entities and other OWL objects (such as restriction fillers) that appear in an export.
+ * Implementations must be safe for use by several threads.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public interface ExportRenderer {
+
+    /**
+     * Render an entity, used when the current rendering is used instead of IRIs
+     *
+     * @param entity    OWL entity
+     * @return Rendering of the entity
+     */
+    String renderEntity(OWLEntity entity);
+
+    /**
+     * Render an OWL object such as a class expression, data range or individual
+     *
+     * @param object    OWL object
+     * @return Rendering of the object
+     */
+    String renderObject(OWLObject object);
+
+}
@@ -0,0 +1,47 @@
+package edu.stanford.protege.csv.export;
+
+import edu.stanford.protege.csv.export.ui.ExportDialogPanel;
+import org.protege.editor.owl.OWLEditorKit;
+import org.protege.editor.owl.ui.action.ProtegeOWLAction;
+import org.semanticweb.owlapi.model.OWLClass;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Exports the selected class and all of its descendants in the asserted class hierarchy. The subtree is walked
+ * while the export runs (see {@link SubclassTreeSelection}), so it is not listed in the export dialog. If the
+ * ontology is edited during the walk, the export starts over, see {@link CsvExporter#export()}.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ExportSubtreeAction extends ProtegeOWLAction {
+    private static final long serialVersionUID = 2931465327417383614L;
+    private OWLEditorKit editorKit;
+
+    @Override
+    public void initialise() throws Exception {
+        this.editorKit = getOWLEditorKit();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        OWLClass selectedClass = editorKit.getWorkspace().getOWLSelectionModel().getLastSelectedClass();
+        if(selectedClass == null) {
+            JOptionPane.showMessageDialog(editorKit.getOWLWorkspace(), "Select the class at the root of the subtree to export.",
+                    "Export class subtree to CSV", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        SubclassTreeSelection selection = new SubclassTreeSelection(selectedClass,
+                editorKit.getModelManager().getOWLHierarchyManager().getOWLClassHierarchyProvider());
+        ExportDialogPanel.showDialog(editorKit, "Export of the subtree of " + editorKit.getModelManager().getRendering(selectedClass),
+                selection, false);
+    }
+
+    @Override
+    public void dispose() throws Exception {
+        /* do nothing */
+    }
+}
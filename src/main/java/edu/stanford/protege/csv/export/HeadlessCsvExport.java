@@ -0,0 +1,141 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Command-line entry point that exports a batch of ontologies to CSV files without starting Protégé, using only
+ * the OWL API. All ontologies are exported in the same JVM with the same saved {@link ExportConfiguration}, and the
+ * load time, export time and throughput of each ontology are reported. Usage:
+ * <pre>
+ *     HeadlessCsvExport &lt;configuration.properties&gt; &lt;output directory&gt; &lt;ontology&gt;...
+ * </pre>
+ * Each ontology is given as a file path or an IRI; an argument of the form {@code @list.txt} stands for the
+ * ontologies listed in the given file, one per line. The output file of an ontology is named after its document.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class HeadlessCsvExport {
+    private static final Logger logger = LoggerFactory.getLogger(HeadlessCsvExport.class.getName());
+    private final ExportConfiguration configuration;
+    private final File outputDirectory;
+
+    /**
+     * Constructor
+     *
+     * @param configuration Export configuration applied to every ontology
+     * @param outputDirectory   Directory in which the CSV files are created
+     */
+    public HeadlessCsvExport(ExportConfiguration configuration, File outputDirectory) {
+        this.configuration = checkNotNull(configuration);
+        this.outputDirectory = checkNotNull(outputDirectory);
+    }
+
+    /**
+     * Export each of the given ontologies in turn. Failures are logged and do not stop the batch.
+     *
+     * @param ontologies    List of ontology file paths or IRIs
+     * @return Number of ontologies that could not be exported
+     */
+    public int exportAll(List<String> ontologies) {
+        int failures = 0;
+        long totalRows = 0, totalMillis = 0;
+        for(String ontology : ontologies) {
+            try {
+                long start = System.currentTimeMillis();
+                totalRows += export(ontology);
+                totalMillis += System.currentTimeMillis() - start;
+            } catch (OWLOntologyCreationException | IOException | RuntimeException e) {
+                logger.error("Could not export ontology " + ontology, e);
+                failures++;
+            }
+        }
+        logger.info("Exported {} of {} ontologies: {} rows in {} ms ({} rows/s)", ontologies.size() - failures, ontologies.size(),
+                totalRows, totalMillis, getThroughput(totalRows, totalMillis));
+        return failures;
+    }
+
+    /**
+     * Load and export one ontology, using a new ontology manager so that the ontology can be garbage
+     * collected before the next one is loaded
+     *
+     * @param ontology  Ontology file path or IRI
+     * @return Number of rows exported
+     */
+    private long export(String ontology) throws OWLOntologyCreationException, IOException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        long start = System.currentTimeMillis();
+        OWLOntology ont;
+        String name;
+        if(ontology.contains("://")) {
+            ont = manager.loadOntology(IRI.create(ontology));
+            name = ontology.substring(ontology.lastIndexOf('/') + 1);
+        } else {
+            File file = new File(ontology);
+            ont = manager.loadOntologyFromOntologyDocument(file);
+            name = file.getName();
+        }
+        long loaded = System.currentTimeMillis();
+        int extension = name.lastIndexOf('.');
+        File outputFile = new File(outputDirectory, (extension > 0 ? name.substring(0, extension) : name) + (configuration.isGzipOutput() ? ".csv.gz" : ".csv"));
+        CsvExporter exporter = configuration.newBuilder(ont, new OwlApiExportRenderer(ont), outputFile).build();
+        exporter.export();
+        long exported = System.currentTimeMillis();
+        long rows = exporter.getResultCount();
+        logger.info("{}: loaded in {} ms, exported {} rows in {} ms ({} rows/s) to {}", ontology, loaded - start, rows,
+                exported - loaded, getThroughput(rows, exported - loaded), outputFile.getAbsolutePath());
+        return rows;
+    }
+
+    private static long getThroughput(long rows, long millis) {
+        return (millis > 0 ? rows * 1000 / millis : rows);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 3) {
+            System.err.println("Usage: HeadlessCsvExport <configuration.properties> <output directory> <ontology>...");
+            System.exit(2);
+        }
+        ExportConfiguration configuration = null;
+        try {
+            configuration = ExportConfiguration.load(new File(args[0]));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid configuration " + args[0] + ": " + e.getMessage());
+            System.exit(2);
+        }
+        File outputDirectory = new File(args[1]);
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create output directory: " + outputDirectory.getAbsolutePath());
+        }
+        List<String> ontologies = new ArrayList<>();
+        for(int i = 2; i < args.length; i++) {
+            if(args[i].startsWith("@")) {
+                for(String line : Files.readAllLines(new File(args[i].substring(1)).toPath(), StandardCharsets.UTF_8)) {
+                    if(!line.trim().isEmpty()) {
+                        ontologies.add(line.trim());
+                    }
+                }
+            } else {
+                ontologies.add(args[i]);
+            }
+        }
+        int failures = new HeadlessCsvExport(configuration, outputDirectory).exportAll(ontologies);
+        System.exit(failures > 0 ? 1 : 0);
+    }
+}
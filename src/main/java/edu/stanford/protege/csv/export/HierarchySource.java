@@ -0,0 +1,31 @@
+package edu.stanford.protege.csv.export;
+
+/**
+ * Class hierarchy from which the ancestors column of an export is taken
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public enum HierarchySource {
+    /**
+     * Hierarchy of asserted superclasses, see {@link AssertedSuperclassIndex}
+     */
+    ASSERTED("asserted hierarchy"),
+
+    /**
+     * Hierarchy computed by the reasoner, see {@link InferredHierarchyIndex}
+     */
+    INFERRED("inferred hierarchy");
+
+    private final String displayName;
+
+    HierarchySource(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
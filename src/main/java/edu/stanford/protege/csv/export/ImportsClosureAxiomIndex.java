@@ -0,0 +1,91 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.MapMaker;
+import org.semanticweb.owlapi.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the axioms from which {@link PropertyValueExtractor} takes property values, over the imports closure of
+ * an ontology: the subclass axioms of each named subclass, the equivalent classes axioms of each named class, and the
+ * data and object property assertions of each named individual. The index is built in one pass over the imports
+ * closure, so that looking up the axioms of an entity does not query every imported ontology.
+ * <br>
+ * Indexes are cached per ontology and reused by later exports for as long as none of the ontologies in the imports
+ * closure has changed, and the closure is made of the same ontology objects (see {@link OntologyChangeTracker}).
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+final class ImportsClosureAxiomIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ImportsClosureAxiomIndex.class.getName());
+    private static final Map<OWLOntology, ImportsClosureAxiomIndex> cache = new MapMaker().weakKeys().makeMap();
+    private final ImmutableSetMultimap<OWLEntity, OWLAxiom> axioms;
+    private final Map<Long, Long> changeCounts;
+
+    private ImportsClosureAxiomIndex(OWLOntology ont, Map<Long, Long> changeCounts) {
+        this.changeCounts = changeCounts;
+        ImmutableSetMultimap.Builder<OWLEntity, OWLAxiom> builder = ImmutableSetMultimap.builder();
+        for(OWLOntology o : ont.getImportsClosure()) {
+            for(OWLSubClassOfAxiom ax : o.getAxioms(AxiomType.SUBCLASS_OF)) {
+                if(!ax.getSubClass().isAnonymous()) {
+                    builder.put(ax.getSubClass().asOWLClass(), ax);
+                }
+            }
+            for(OWLEquivalentClassesAxiom ax : o.getAxioms(AxiomType.EQUIVALENT_CLASSES)) {
+                for(OWLClass cls : ax.getNamedClasses()) {
+                    builder.put(cls, ax);
+                }
+            }
+            for(OWLDataPropertyAssertionAxiom ax : o.getAxioms(AxiomType.DATA_PROPERTY_ASSERTION)) {
+                if(ax.getSubject().isNamed()) {
+                    builder.put(ax.getSubject().asOWLNamedIndividual(), ax);
+                }
+            }
+            for(OWLObjectPropertyAssertionAxiom ax : o.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION)) {
+                if(ax.getSubject().isNamed()) {
+                    builder.put(ax.getSubject().asOWLNamedIndividual(), ax);
+                }
+            }
+        }
+        axioms = builder.build();
+    }
+
+    /**
+     * Get the axiom index of the given ontology, building it if there is no index for the ontology
+     * yet or if its imports closure has changed since the index was built
+     *
+     * @param ont   OWL ontology
+     * @return Axiom index
+     */
+    static synchronized ImportsClosureAxiomIndex get(OWLOntology ont) {
+        checkNotNull(ont);
+        Map<Long, Long> changeCounts = OntologyChangeTracker.get(ont.getOWLOntologyManager()).getImportsClosureChangeCounts(ont);
+        ImportsClosureAxiomIndex index = cache.get(ont);
+        if(index == null || !index.changeCounts.equals(changeCounts)) {
+            long start = System.currentTimeMillis();
+            index = new ImportsClosureAxiomIndex(ont, changeCounts);
+            cache.put(ont, index);
+            logger.info("Built axiom index of {} entities over {} ontologies in {} ms", index.axioms.keySet().size(),
+                    changeCounts.size(), System.currentTimeMillis() - start);
+        }
+        return index;
+    }
+
+    /**
+     * Get the indexed axioms of the given entity, in any ontology of the imports closure
+     *
+     * @param entity    OWL class or named individual
+     * @return Set of axioms, empty if there are none
+     */
+    Set<OWLAxiom> getAxioms(OWLEntity entity) {
+        return axioms.get(entity);
+    }
+}
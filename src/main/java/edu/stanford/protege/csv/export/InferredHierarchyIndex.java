@@ -0,0 +1,127 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Index of the inferred direct superclasses of classes and the inferred direct types of individuals, taken from the
+ * class hierarchy computed by a reasoner. The index is built by a single walk down the hierarchy from owl:Thing,
+ * asking the reasoner once for the direct subclasses (and, if types are indexed, the direct instances) of each node,
+ * so that exports do not query the reasoner for every row. The superclasses of a class are all the classes of its
+ * parent nodes, so classes equivalent to a parent are included. Unsatisfiable classes have no superclasses.
+ * <br>
+ * An index is a snapshot of the hierarchy, taken by the thread that runs an export before any row is rendered, so
+ * that the reasoner is called from a single thread and the rows of an export agree with each other, and so that the
+ * walk does not run on the event dispatch thread. Indexes are immutable and thread-safe.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+final class InferredHierarchyIndex {
+    private static final Logger logger = LoggerFactory.getLogger(InferredHierarchyIndex.class.getName());
+    private final ImmutableSetMultimap<OWLClass, OWLClass> superclasses;
+    private final ImmutableSetMultimap<OWLNamedIndividual, OWLClass> types;
+
+    /**
+     * Constructor
+     *
+     * @param reasoner  Reasoner, which must have classified its ontology already
+     * @param includeTypes  true if the types of individuals should be indexed, false otherwise
+     * @throws IllegalStateException if the reasoner has not classified its ontology, or has not computed the types
+     * of individuals if these are indexed. The index never asks the reasoner to compute them, since that can take
+     * far longer than the export itself.
+     */
+    InferredHierarchyIndex(OWLReasoner reasoner, boolean includeTypes) {
+        checkReasoner(reasoner, includeTypes);
+        long start = System.currentTimeMillis();
+        ImmutableSetMultimap.Builder<OWLClass, OWLClass> superclassesBuilder = ImmutableSetMultimap.builder();
+        ImmutableSetMultimap.Builder<OWLNamedIndividual, OWLClass> typesBuilder = ImmutableSetMultimap.builder();
+        Deque<Node<OWLClass>> queue = new ArrayDeque<>();
+        Set<OWLClass> visited = new HashSet<>();
+        Node<OWLClass> top = reasoner.getTopClassNode();
+        queue.add(top);
+        visited.add(top.getRepresentativeElement());
+        int nodeCount = 0;
+        while(!queue.isEmpty()) {
+            Node<OWLClass> node = queue.poll();
+            OWLClass representative = node.getRepresentativeElement();
+            Set<OWLClass> nodeClasses = node.getEntities();
+            nodeCount++;
+            for(Node<OWLClass> child : reasoner.getSubClasses(representative, true)) {
+                if(child.isBottomNode()) {
+                    continue;
+                }
+                for(OWLClass cls : child.getEntities()) {
+                    superclassesBuilder.putAll(cls, nodeClasses);
+                }
+                if(visited.add(child.getRepresentativeElement())) {
+                    queue.add(child);
+                }
+            }
+            if(includeTypes) {
+                for(OWLNamedIndividual individual : reasoner.getInstances(representative, true).getFlattened()) {
+                    typesBuilder.putAll(individual, nodeClasses);
+                }
+            }
+        }
+        superclasses = superclassesBuilder.build();
+        types = typesBuilder.build();
+        logger.info("Built inferred hierarchy index of {} classes and {} individuals over {} nodes in {} ms",
+                superclasses.keySet().size(), types.keySet().size(), nodeCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Check that an index can be built from the given reasoner without asking it to compute anything, which is cheap
+     * enough to be done on the event dispatch thread, before the export is started
+     *
+     * @param reasoner  Reasoner
+     * @param includeTypes  true if the types of individuals should be indexed, false otherwise
+     * @throws IllegalStateException if the reasoner has not classified its ontology, or has not computed the types
+     * of individuals if these are indexed
+     */
+    static void checkReasoner(OWLReasoner reasoner, boolean includeTypes) {
+        checkNotNull(reasoner);
+        checkState(reasoner.isPrecomputed(InferenceType.CLASS_HIERARCHY), "The reasoner %s has not classified the ontology", reasoner.getReasonerName());
+        checkState(!includeTypes || reasoner.isPrecomputed(InferenceType.CLASS_ASSERTIONS),
+                "The reasoner %s has not computed the types of individuals", reasoner.getReasonerName());
+    }
+
+    /**
+     * Get the inferred direct superclasses of the given class
+     *
+     * @param cls   OWL class
+     * @return Set of direct superclasses, empty for owl:Thing, unsatisfiable classes, and classes unknown to the reasoner
+     */
+    Set<OWLClass> getSuperclasses(OWLClass cls) {
+        return superclasses.get(cls);
+    }
+
+    /**
+     * Get the classes that have inferred superclasses, which are all satisfiable classes other than owl:Thing
+     */
+    Set<OWLClass> getClasses() {
+        return superclasses.keySet();
+    }
+
+    /**
+     * Get the inferred direct types of the given individual
+     *
+     * @param individual    OWL named individual
+     * @return Set of direct types, empty if the types were not indexed or the individual is unknown to the reasoner
+     */
+    Set<OWLClass> getTypes(OWLNamedIndividual individual) {
+        return types.get(individual);
+    }
+}
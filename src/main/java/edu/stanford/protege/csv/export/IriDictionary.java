@@ -0,0 +1,121 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Dictionary that assigns consecutive integer ids, starting from 0, to the IRIs written by an export, in the order in
+ * which they first occur in the output. Rows of a dictionary-encoded export refer to entities by these ids, and the
+ * dictionary is written to a separate file that lists each IRI once.
+ * <br>
+ * Rows are not rendered with ids, since rows may be rendered by several threads in any order. Instead, each renderer
+ * writes {@link References references} numbered within the block of rows it is rendering, and the ids are assigned
+ * when the blocks are written, in output order, by {@link #resolve(CsvRowEncoder, List)}. The ids, and so the output,
+ * are thus the same however many threads render the rows. Dictionaries are confined to the thread writing the rows.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class IriDictionary {
+    /**
+     * Character that encloses references in rendered rows. It is a Unicode noncharacter, so it does not occur in
+     * the text of an ontology.
+     */
+    static final char REFERENCE_MARK = '\uFFFF';
+    private final Map<IRI, String> ids = new HashMap<>();
+    private final List<IRI> iris = new ArrayList<>();
+
+    /**
+     * Replace the references in the rows of the given encoder by the ids of the IRIs they refer to, assigning the next
+     * free ids to the IRIs that have none yet in the order in which they occur in the rows
+     *
+     * @param encoder   Row encoder holding the rows of a block
+     * @param referencedIris    IRIs referred to in the block, indexed by reference number, see {@link References#take()}
+     */
+    void resolve(CsvRowEncoder encoder, List<IRI> referencedIris) {
+        checkNotNull(referencedIris);
+        if(!referencedIris.isEmpty()) {
+            encoder.replaceReferences(REFERENCE_MARK, reference -> getId(referencedIris.get(reference)));
+        }
+    }
+
+    private String getId(IRI iri) {
+        String id = ids.get(iri);
+        if(id == null) {
+            id = Integer.toString(iris.size());
+            iris.add(iri);
+            ids.put(iri, id);
+        }
+        return id;
+    }
+
+    int size() {
+        return iris.size();
+    }
+
+    /**
+     * Write the dictionary, one {@code id<delimiter>IRI} row per IRI in the order of the ids
+     *
+     * @param writer    Writer
+     * @param delimiter Delimiter between the id and the IRI
+     * @param includeHeader true if a header row should be written first, false otherwise
+     * @throws IOException if the dictionary could not be written
+     */
+    void write(Writer writer, String delimiter, boolean includeHeader) throws IOException {
+        checkNotNull(delimiter);
+        CsvRowEncoder encoder = new CsvRowEncoder(delimiter, "");
+        if(includeHeader) {
+            encoder.appendCell("Id");
+            encoder.appendLastCell("IRI");
+            encoder.endRow();
+        }
+        for(int i = 0; i < iris.size(); i++) {
+            encoder.appendCell(Integer.toString(i));
+            encoder.appendLastCell(iris.get(i).toString());
+            encoder.endRow();
+            if(encoder.isFull()) {
+                encoder.flush(writer);
+            }
+        }
+        encoder.flush(writer);
+    }
+
+    /**
+     * References to IRIs written by a renderer in place of ids, numbered from 0 in the order in which the renderer
+     * first refers to each IRI. A reference is its number enclosed in {@link #REFERENCE_MARK}s. Confined to the
+     * thread of the renderer.
+     */
+    static final class References {
+        private final Map<IRI, String> references = new HashMap<>();
+        private List<IRI> iris = new ArrayList<>();
+
+        /**
+         * Get the reference to the given IRI, numbering it if it has no reference yet
+         */
+        String get(IRI iri) {
+            String reference = references.get(iri);
+            if(reference == null) {
+                reference = REFERENCE_MARK + Integer.toString(iris.size()) + REFERENCE_MARK;
+                iris.add(iri);
+                references.put(iri, reference);
+            }
+            return reference;
+        }
+
+        /**
+         * Get the IRIs referred to since the last call, indexed by reference number, and start numbering afresh
+         */
+        List<IRI> take() {
+            List<IRI> taken = iris;
+            iris = new ArrayList<>();
+            references.clear();
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+import org.semanticweb.owlapi.model.*;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts the changes applied to each ontology of an ontology manager, so that data derived from an ontology
+ * (such as the indexes used by {@link CsvExporter}) can be cached across exports and rebuilt only when one of
+ * the ontologies it was derived from has changed since. There is one tracker per ontology manager.
+ * <br>
+ * Ontologies are told apart by identity, not by their IDs: each ontology object is given its own instance number
+ * when the tracker first sees it. An ontology that is reloaded, or removed and loaded again, is a new object, so
+ * data derived from the old object is not taken for up to date even if the ID is the same and neither has changed.
+ * <br>
+ * Changes are counted both before and after they are applied, so that data derived while a change was being applied,
+ * from a half-changed ontology, is never taken for up to date either: its change counts were read before the change
+ * was counted as applied.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+final class OntologyChangeTracker implements OWLOntologyChangeListener, ImpendingOWLOntologyChangeListener {
+    private static final Map<OWLOntologyManager, OntologyChangeTracker> trackers = new MapMaker().weakKeys().makeMap();
+    private static final AtomicLong nextInstance = new AtomicLong();
+    private final Map<OWLOntology, Counter> counters = new MapMaker().weakKeys().makeMap(); // weak keys are compared by identity
+
+    private OntologyChangeTracker() { }
+
+    /**
+     * Get the change tracker of the given ontology manager, registering one with the manager if necessary
+     *
+     * @param manager   OWL ontology manager
+     * @return Change tracker
+     */
+    static synchronized OntologyChangeTracker get(OWLOntologyManager manager) {
+        checkNotNull(manager);
+        OntologyChangeTracker tracker = trackers.get(manager);
+        if(tracker == null) {
+            tracker = new OntologyChangeTracker();
+            manager.addOntologyChangeListener(tracker);
+            manager.addImpendingOntologyChangeListener(tracker);
+            trackers.put(manager, tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Get the change count of each ontology in the imports closure of the given ontology. Data derived from the
+     * closure is up to date for as long as these counts are equal, which also tells apart closures made of different
+     * ontology objects, such as after an imported ontology was reloaded, or removed and loaded again.
+     *
+     * @param ont   OWL ontology
+     * @return Map from the instance number of each ontology in the imports closure to its change count
+     */
+    Map<Long, Long> getImportsClosureChangeCounts(OWLOntology ont) {
+        ImmutableMap.Builder<Long, Long> counts = ImmutableMap.builder();
+        for(OWLOntology o : ont.getImportsClosure()) {
+            Counter counter = getCounter(o);
+            counts.put(counter.instance, counter.count.get());
+        }
+        return counts.build();
+    }
+
+    long getChangeCount(OWLOntology ont) {
+        return getCounter(ont).count.get();
+    }
+
+    private Counter getCounter(OWLOntology ont) {
+        return counters.computeIfAbsent(ont, o -> new Counter());
+    }
+
+    @Override
+    public void handleImpendingOntologyChanges(@Nonnull List<? extends OWLOntologyChange> impendingChanges) {
+        countChanges(impendingChanges);
+    }
+
+    @Override
+    public void ontologiesChanged(@Nonnull List<? extends OWLOntologyChange> changes) throws OWLException {
+        countChanges(changes);
+    }
+
+    private void countChanges(List<? extends OWLOntologyChange> changes) {
+        for(OWLOntologyChange change : changes) {
+            getCounter(change.getOntology()).count.incrementAndGet();
+        }
+    }
+
+    private static final class Counter {
+        private final long instance = nextInstance.getAndIncrement();
+        private final AtomicLong count = new AtomicLong();
+    }
+}
@@ -0,0 +1,73 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.io.OWLObjectRenderer;
+import org.semanticweb.owlapi.manchestersyntax.renderer.ManchesterOWLSyntaxOWLObjectRendererImpl;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.AnnotationValueShortFormProvider;
+import org.semanticweb.owlapi.util.ShortFormProvider;
+import org.semanticweb.owlapi.util.SimpleShortFormProvider;
+
+import java.util.Collections;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Export renderer based only on the OWL API, for exports outside of Protégé. Entities are rendered by the
+ * value of an annotation property (rdfs:label by default), falling back to the fragment of their IRI, and
+ * other objects are rendered in Manchester OWL syntax using the same entity renderings. Rendering takes no lock:
+ * entity renderings are only read from the ontology, and each thread renders other objects with its own Manchester
+ * syntax renderer, so that the threads of a parallel export do not wait for each other.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class OwlApiExportRenderer implements ExportRenderer {
+    private final ShortFormProvider shortFormProvider;
+    private final ThreadLocal<OWLObjectRenderer> objectRenderers;
+
+    /**
+     * Constructor for a renderer that renders entities by their rdfs:label
+     *
+     * @param ont   OWL ontology whose imports closure contains the label annotations
+     */
+    public OwlApiExportRenderer(OWLOntology ont) {
+        this(ont, ont.getOWLOntologyManager().getOWLDataFactory().getRDFSLabel());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ont   OWL ontology whose imports closure contains the rendering annotations
+     * @param renderingProperty Annotation property whose values are used to render entities
+     */
+    public OwlApiExportRenderer(OWLOntology ont, OWLAnnotationProperty renderingProperty) {
+        this(new AnnotationValueShortFormProvider(Collections.singletonList(checkNotNull(renderingProperty)),
+                Collections.emptyMap(), ont.getOWLOntologyManager(), new SimpleShortFormProvider()));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param shortFormProvider Short form provider used to render entities, which must be safe for use by several
+     *                          threads, as the short form providers of the OWL API are
+     */
+    public OwlApiExportRenderer(ShortFormProvider shortFormProvider) {
+        this.shortFormProvider = checkNotNull(shortFormProvider);
+        objectRenderers = ThreadLocal.withInitial(() -> {
+            OWLObjectRenderer objectRenderer = new ManchesterOWLSyntaxOWLObjectRendererImpl();
+            objectRenderer.setShortFormProvider(shortFormProvider);
+            return objectRenderer;
+        });
+    }
+
+    @Override
+    public String renderEntity(OWLEntity entity) {
+        return shortFormProvider.getShortForm(entity);
+    }
+
+    @Override
+    public String renderObject(OWLObject object) {
+        return objectRenderers.get().render(object);
+    }
+}
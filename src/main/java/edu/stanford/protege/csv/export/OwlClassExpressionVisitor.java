@@ -90,6 +90,7 @@ public class OwlClassExpressionVisitor implements OWLClassExpressionVisitor {
     @Override
     public void visit(@Nonnull OWLObjectHasSelf owlObjectHasSelf) {
         property = owlObjectHasSelf.getProperty().getNamedProperty();
+        filler = null;
         // TODO
     }
 
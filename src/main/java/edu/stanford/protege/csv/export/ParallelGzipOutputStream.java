@@ -0,0 +1,156 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Output stream that gzip-compresses its input on several threads. The input is cut into fixed-size blocks and
+ * each block is compressed into an independent gzip member; the members are written to the underlying stream
+ * in input order. A concatenation of gzip members is itself a valid gzip stream (RFC 1952), which standard gzip
+ * tools decompress into the concatenation of the blocks.
+ * <br>
+ * At most twice as many blocks as there are compression threads are held in memory at a time: once that limit is
+ * reached, further writes wait until the oldest pending block has been compressed and written out.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ParallelGzipOutputStream extends FilterOutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+    private final ExecutorService executor;
+    private final int blockSize, maxPendingBlocks, level;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param out   Underlying output stream
+     * @param threads   Number of threads that compress blocks
+     */
+    ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out   Underlying output stream
+     * @param threads   Number of threads that compress blocks
+     * @param blockSize Number of uncompressed bytes in each gzip member
+     * @param level Deflate compression level
+     */
+    ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) {
+        super(checkNotNull(out));
+        checkArgument(threads > 0, "Number of compression threads must be positive: %s", threads);
+        checkArgument(blockSize > 0, "Block size must be positive: %s", blockSize);
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxPendingBlocks = threads * 2;
+        this.block = new byte[blockSize];
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "CSV export compression");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if(blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if(blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compress the buffered bytes as a (possibly short) gzip member and write out all pending members.
+     * Frequent flushing reduces the compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        if(blockLength > 0) {
+            submitBlock();
+        }
+        while(!pendingBlocks.isEmpty()) {
+            writeOldestBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if(pendingBlocks.size() >= maxPendingBlocks) {
+            writeOldestBlock();
+        }
+        byte[] input = block;
+        int length = blockLength;
+        pendingBlocks.add(executor.submit(() -> compress(input, length)));
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeOldestBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing output");
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        }
+    }
+
+    private byte[] compress(byte[] input, int length) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 8192) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(input, 0, length);
+        }
+        return member.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+package edu.stanford.protege.csv.export;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Extracts the values of all selected object and data properties for an entity in a single walk over the
+ * entity's axioms. Each (property, filler) pair found is routed to the column of its property, so the cost
+ * of extraction depends on the number of axioms about the entity and not on the number of selected properties.
+ * Class expressions are broken into their restrictions, including those nested in intersections, by a
+ * {@link ClassExpressionDecomposer} that can be shared between extractors.
+ * <br>
+ * Instances are not thread-safe; the value lists are reused between calls to {@link #extract(OWLEntity)}.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class PropertyValueExtractor {
+    private final ImportsClosureAxiomIndex axiomIndex;
+    private final Function<OWLObject, String> objectRenderer;
+    private final ClassExpressionDecomposer decomposer;
+    private final Map<OWLEntity, List<String>> values = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param axiomIndex    Index of the axioms of the imports closure, which may be null if
+     *                      {@link #needsAxiomIndex(Collection)} is false for the given properties
+     * @param decomposer    Decomposer of class expressions into restrictions
+     * @param properties    List of properties selected for export; those that are not object or data properties are ignored
+     * @param objectRenderer    Renderer for fillers and individuals
+     */
+    PropertyValueExtractor(ImportsClosureAxiomIndex axiomIndex, ClassExpressionDecomposer decomposer, Collection<OWLEntity> properties,
+                           Function<OWLObject, String> objectRenderer) {
+        this.objectRenderer = checkNotNull(objectRenderer);
+        this.decomposer = checkNotNull(decomposer);
+        checkArgument(axiomIndex != null || !needsAxiomIndex(properties), "An axiom index is needed to extract object and data property values");
+        this.axiomIndex = axiomIndex;
+        for(OWLEntity property : checkNotNull(properties)) {
+            if(property.isOWLObjectProperty() || property.isOWLDataProperty()) {
+                values.put(property, new ArrayList<>());
+            }
+        }
+    }
+
+    /**
+     * Check whether extracting the values of the given properties requires an axiom index
+     *
+     * @param properties    List of properties selected for export
+     * @return true if any of the properties is an object or data property, false otherwise
+     */
+    static boolean needsAxiomIndex(Collection<OWLEntity> properties) {
+        for(OWLEntity property : properties) {
+            if(property.isOWLObjectProperty() || property.isOWLDataProperty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extract the values of all selected properties for the given entity. The values are available
+     * through {@link #getValues(OWLEntity)} until the next call to this method.
+     *
+     * @param entity    OWL entity
+     */
+    void extract(OWLEntity entity) {
+        if(values.isEmpty()) {
+            return;
+        }
+        for(List<String> list : values.values()) {
+            list.clear();
+        }
+        if(entity.isOWLClass()) {
+            extractFromClassAxioms(entity.asOWLClass());
+        } else if(entity.isOWLNamedIndividual()) {
+            extractFromIndividualAxioms(entity.asOWLNamedIndividual());
+        }
+    }
+
+    /**
+     * Get the values of the given property found by the last call to {@link #extract(OWLEntity)}
+     *
+     * @param property  Object or data property
+     * @return List of values, empty if there are none or the property was not selected
+     */
+    List<String> getValues(OWLEntity property) {
+        List<String> list = values.get(property);
+        return (list != null ? list : Collections.emptyList());
+    }
+
+    private void extractFromClassAxioms(OWLClass cls) {
+        for(OWLAxiom axiom : axiomIndex.getAxioms(cls)) {
+            if(axiom.getAxiomType().equals(AxiomType.SUBCLASS_OF)) {
+                addFiller((OWLSubClassOfAxiom) axiom, cls);
+            } else if(axiom.getAxiomType().equals(AxiomType.EQUIVALENT_CLASSES)) {
+                addFiller(((OWLEquivalentClassesAxiom) axiom).asOWLSubClassOfAxioms().iterator().next(), cls);
+            }
+        }
+    }
+
+    private void extractFromIndividualAxioms(OWLNamedIndividual individual) {
+        for(OWLAxiom axiom : axiomIndex.getAxioms(individual)) {
+            if(axiom.getAxiomType().equals(AxiomType.DATA_PROPERTY_ASSERTION)) {
+                OWLDataPropertyAssertionAxiom dataAssertionAxiom = (OWLDataPropertyAssertionAxiom) axiom;
+                List<String> list = values.get(dataAssertionAxiom.getProperty());
+                if(list != null) {
+                    list.add(dataAssertionAxiom.getObject().getLiteral());
+                }
+            } else if(axiom.getAxiomType().equals(AxiomType.OBJECT_PROPERTY_ASSERTION)) {
+                OWLObjectPropertyAssertionAxiom objAssertionAxiom = (OWLObjectPropertyAssertionAxiom) axiom;
+                List<String> list = values.get(objAssertionAxiom.getProperty());
+                if(list != null) {
+                    list.add(objectRenderer.apply(objAssertionAxiom.getObject()));
+                }
+            }
+        }
+    }
+
+    private void addFiller(OWLSubClassOfAxiom axiom, OWLClass cls) {
+        OWLClassExpression ce;
+        if(axiom.getSubClass().equals(cls)) {
+            ce = axiom.getSuperClass();
+        } else {
+            ce = axiom.getSubClass();
+        }
+        for(ClassExpressionDecomposer.Restriction restriction : decomposer.decompose(ce)) {
+            List<String> list = values.get(restriction.getProperty());
+            if(list != null) {
+                list.add(objectRenderer.apply(restriction.getFiller()));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package edu.stanford.protege.csv.export;
+
+import org.protege.editor.owl.model.OWLModelManager;
+import org.protege.editor.owl.ui.renderer.OWLModelManagerEntityRenderer;
+import org.protege.editor.owl.ui.renderer.OWLObjectRenderer;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Export renderer that uses the entity and object renderers currently selected in Protégé. Rendering is
+ * synchronized, since the Protégé renderers are not guaranteed to be thread-safe; parallel exports therefore render
+ * all entities up front, and only render the fillers they have not cached yet with this renderer.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ProtegeExportRenderer implements ExportRenderer {
+    private final OWLModelManagerEntityRenderer entityRenderer;
+    private final OWLObjectRenderer objectRenderer;
+
+    /**
+     * Constructor
+     *
+     * @param manager   OWL model manager
+     */
+    ProtegeExportRenderer(OWLModelManager manager) {
+        checkNotNull(manager);
+        entityRenderer = manager.getOWLEntityRenderer();
+        objectRenderer = manager.getOWLObjectRenderer();
+    }
+
+    @Override
+    public synchronized String renderEntity(OWLEntity entity) {
+        return entityRenderer.render(entity);
+    }
+
+    @Override
+    public synchronized String renderObject(OWLObject object) {
+        return objectRenderer.render(object);
+    }
+}
@@ -0,0 +1,72 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Size-bounded cache of the renderings of OWL objects such as restriction fillers and individuals, which tend
+ * to recur across many rows of an export. The least recently used renderings are evicted once the cache is full.
+ * The cache is safe for use by several threads, and is meant to be scoped to a single export so that renderings
+ * do not outlive changes to the rendering preferences. Renderings that involve entities changed since they were
+ * cached can be removed with {@link #invalidate(Set)}.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class RenderingCache {
+    private final LoadingCache<OWLObject, String> cache;
+
+    /**
+     * Constructor
+     *
+     * @param renderer  Renderer used to render objects that are not in the cache
+     * @param maximumSize   Maximum number of renderings kept in the cache
+     */
+    RenderingCache(Function<OWLObject, String> renderer, long maximumSize) {
+        checkNotNull(renderer);
+        checkArgument(maximumSize >= 0, "Cache size must not be negative: %s", maximumSize);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<OWLObject, String>() {
+                    @Override
+                    public String load(OWLObject obj) {
+                        return renderer.apply(obj);
+                    }
+                });
+    }
+
+    String render(OWLObject obj) {
+        return cache.getUnchecked(obj);
+    }
+
+    /**
+     * Remove the renderings of the objects whose signature includes an entity with one of the given IRIs
+     *
+     * @param iris  IRIs of changed entities
+     */
+    void invalidate(Set<IRI> iris) {
+        checkNotNull(iris);
+        if(!iris.isEmpty()) {
+            cache.asMap().keySet().removeIf(obj -> obj.getSignature().stream().anyMatch(e -> iris.contains(e.getIRI())));
+        }
+    }
+
+    long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    long getMissCount() {
+        return cache.stats().missCount();
+    }
+}
@@ -0,0 +1,64 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.LongConsumer;
+
+/**
+ * Destination of the rows of an export, which takes care of the header row of each output file. The output of a sink
+ * is only complete once it is committed; a sink that is not committed must be discarded.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+interface RowSink {
+
+    /**
+     * Write out the complete rows buffered in the given encoder and clear the encoder for reuse
+     *
+     * @param encoder   Row encoder holding complete rows
+     * @throws IOException if the rows could not be written
+     */
+    void writeRows(CsvRowEncoder encoder) throws IOException;
+
+    /**
+     * Write text that follows the last row, such as the custom text of an export
+     *
+     * @param text  Text to write
+     * @throws IOException if the text could not be written
+     */
+    void writeTrailer(CharSequence text) throws IOException;
+
+    /**
+     * Finish the output once all rows and the trailer have been written, and close the sink. Only called after a
+     * successful export.
+     *
+     * @throws IOException if the output could not be finished
+     */
+    void commit() throws IOException;
+
+    /**
+     * Close the sink and delete everything written to it. Used when an export is cancelled or fails, including
+     * when {@link #commit()} fails.
+     *
+     * @throws IOException if the output could not be deleted
+     */
+    void discard() throws IOException;
+
+    /**
+     * Opens the writer of an output file
+     */
+    interface WriterFactory {
+        /**
+         * Open the writer of an output file
+         *
+         * @param file  Output file
+         * @param byteCounter   Receives the number of bytes written to the file each time bytes are written
+         * @return Writer of the file
+         * @throws IOException if the file could not be opened
+         */
+        Writer open(File file, LongConsumer byteCounter) throws IOException;
+    }
+}
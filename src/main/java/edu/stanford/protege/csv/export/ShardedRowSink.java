@@ -0,0 +1,225 @@
+package edu.stanford.protege.csv.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Row sink that splits the rows of an export into numbered shard files, each starting with the header row. A new
+ * shard is started when the current one reaches the maximum number of rows or the maximum size; rows are never split
+ * across shards. Each shard is written by its own task on a pool of writer threads, so a full shard is still being
+ * compressed and written while rows go to the next one.
+ * <br>
+ * The size of a shard is the number of bytes written to its file, as counted on the file channel, so it is measured
+ * after encoding and compression. Since rows are handed to the writer of a shard before they reach its file, a shard
+ * is only known to be full once the rows already queued and buffered for it have been written, and may exceed the
+ * maximum size by that much.
+ * <br>
+ * Shards of an output file {@code export.csv} are named {@code export-00000.csv}, {@code export-00001.csv}, etc.
+ * Once the sink is committed and all shards are written, a manifest file {@code export-manifest.txt} is created that
+ * lists the name and number of rows of each shard, separated by a tab, one shard per line. A sink that is discarded
+ * writes no manifest and deletes its shards, so a manifest only ever lists complete shards.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class ShardedRowSink implements RowSink {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedRowSink.class.getName());
+    private static final char[] END_OF_SHARD = new char[0];
+    private static final int QUEUE_CAPACITY = 16;
+    private final File outputFile;
+    private final String header, baseName, extension;
+    private final long maxShardRows, maxShardSize;
+    private final WriterFactory writerFactory;
+    private final ExecutorService executor;
+    private final List<Shard> shards = new ArrayList<>();
+    private Shard currentShard;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param outputFile    Output file, after which the shards and the manifest are named
+     * @param header    Header row repeated at the start of each shard, or an empty string if there is no header
+     * @param maxShardRows  Maximum number of rows in a shard, or 0 for no limit
+     * @param maxShardSize  Maximum number of bytes in a shard, or 0 for no limit. A single row larger than this
+     *                      still gets a shard of its own.
+     * @param writerThreads Number of shards that can be written concurrently
+     * @param writerFactory Opens the writer of each shard
+     */
+    ShardedRowSink(File outputFile, String header, long maxShardRows, long maxShardSize, int writerThreads, WriterFactory writerFactory) {
+        this.outputFile = checkNotNull(outputFile);
+        this.header = checkNotNull(header);
+        checkArgument(maxShardRows >= 0, "Maximum number of rows per shard must not be negative: %s", maxShardRows);
+        checkArgument(maxShardSize >= 0, "Maximum shard size must not be negative: %s", maxShardSize);
+        checkArgument(writerThreads > 0, "Number of shard writer threads must be positive: %s", writerThreads);
+        this.maxShardRows = maxShardRows;
+        this.maxShardSize = maxShardSize;
+        this.writerFactory = checkNotNull(writerFactory);
+        String name = outputFile.getName();
+        int dot = name.indexOf('.', 1);
+        this.baseName = (dot > 0 ? name.substring(0, dot) : name);
+        this.extension = (dot > 0 ? name.substring(dot) : "");
+        this.executor = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "CSV export shard writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        currentShard = startShard();
+    }
+
+    @Override
+    public void writeRows(CsvRowEncoder encoder) throws IOException {
+        int start = 0;
+        for(int row = 0; row < encoder.getRowCount(); row++) {
+            int rowStart = (row == 0 ? 0 : encoder.getRowEnd(row - 1));
+            if(isFull(currentShard)) {
+                write(currentShard, encoder.copy(start, rowStart));
+                endShard(currentShard);
+                currentShard = startShard();
+                start = rowStart;
+            }
+            currentShard.rowCount++;
+        }
+        write(currentShard, encoder.copy(start, encoder.length()));
+        encoder.clear();
+    }
+
+    private boolean isFull(Shard shard) {
+        if(shard.rowCount == 0) {
+            return false;
+        }
+        return (maxShardRows > 0 && shard.rowCount >= maxShardRows) || (maxShardSize > 0 && shard.size.sum() >= maxShardSize);
+    }
+
+    @Override
+    public void writeTrailer(CharSequence text) throws IOException {
+        write(currentShard, text.toString().toCharArray());
+    }
+
+    /**
+     * Finish the last shard, wait until all shards are written and write the manifest
+     */
+    @Override
+    public void commit() throws IOException {
+        checkState(!closed, "Sink is already closed");
+        closed = true;
+        try {
+            endShard(currentShard);
+            for(Shard shard : shards) {
+                awaitShard(shard);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<String> manifest = new ArrayList<>(shards.size());
+        for(Shard shard : shards) {
+            manifest.add(shard.file.getName() + "\t" + shard.rowCount);
+        }
+        File manifestFile = getManifestFile();
+        Files.write(manifestFile.toPath(), manifest, StandardCharsets.UTF_8);
+        logger.info(" ... wrote {} shards, listed in {}", shards.size(), manifestFile.getAbsolutePath());
+    }
+
+    @Override
+    public void discard() throws IOException {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for(Shard shard : shards) {
+            Files.deleteIfExists(shard.file.toPath());
+        }
+        Files.deleteIfExists(getManifestFile().toPath());
+    }
+
+    File getManifestFile() {
+        return new File(outputFile.getParentFile(), baseName + "-manifest.txt");
+    }
+
+    private Shard startShard() {
+        Shard shard = new Shard(new File(outputFile.getParentFile(), String.format("%s-%05d%s", baseName, shards.size(), extension)));
+        shards.add(shard);
+        shard.future = executor.submit(shard);
+        return shard;
+    }
+
+    private void endShard(Shard shard) throws IOException {
+        write(shard, END_OF_SHARD);
+    }
+
+    /**
+     * Hand a block of characters to the writer of the given shard, waiting while its queue is full
+     */
+    private void write(Shard shard, char[] block) throws IOException {
+        if(block.length == 0 && block != END_OF_SHARD) {
+            return;
+        }
+        try {
+            while(!shard.blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                if(shard.future.isDone()) {
+                    awaitShard(shard);
+                    throw new IOException("Writer of shard stopped unexpectedly: " + shard.file.getAbsolutePath());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing shard: " + shard.file.getAbsolutePath());
+        }
+    }
+
+    private void awaitShard(Shard shard) throws IOException {
+        try {
+            shard.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing shard: " + shard.file.getAbsolutePath());
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        }
+    }
+
+    /**
+     * Writes the blocks of one shard to its file until the end of the shard is reached
+     */
+    private final class Shard implements Callable<Void> {
+        private final File file;
+        private final BlockingQueue<char[]> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private Future<Void> future;
+        private final LongAdder size = new LongAdder(); // bytes written to the file, counted by the writer thread
+        private long rowCount = 0; // accessed only by the exporting thread
+
+        Shard(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            try (Writer writer = writerFactory.open(file, size::add)) {
+                writer.write(header);
+                for(char[] block = blocks.take(); block != END_OF_SHARD; block = blocks.take()) {
+                    writer.write(block);
+                }
+            }
+            return null;
+        }
+    }
+}
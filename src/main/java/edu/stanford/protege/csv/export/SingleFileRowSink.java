@@ -0,0 +1,66 @@
+package edu.stanford.protege.csv.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Row sink that writes all rows to a single output file, after one header row
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class SingleFileRowSink implements RowSink {
+    private final File outputFile;
+    private final Writer writer;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param outputFile    Output file
+     * @param header    Header row, or an empty string if the file has no header
+     * @param writerFactory Opens the writer of the output file
+     * @throws IOException if the file could not be opened
+     */
+    SingleFileRowSink(File outputFile, String header, WriterFactory writerFactory) throws IOException {
+        this.outputFile = checkNotNull(outputFile);
+        this.writer = writerFactory.open(outputFile, bytes -> { });
+        writer.write(header);
+    }
+
+    @Override
+    public void writeRows(CsvRowEncoder encoder) throws IOException {
+        encoder.flush(writer);
+    }
+
+    @Override
+    public void writeTrailer(CharSequence text) throws IOException {
+        writer.append(text);
+    }
+
+    @Override
+    public void commit() throws IOException {
+        close();
+    }
+
+    @Override
+    public void discard() throws IOException {
+        try {
+            close();
+        } finally {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+    }
+
+    private void close() throws IOException {
+        if(!closed) {
+            closed = true;
+            writer.close();
+        }
+    }
+}
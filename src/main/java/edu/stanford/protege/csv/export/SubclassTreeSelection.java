@@ -0,0 +1,102 @@
+package edu.stanford.protege.csv.export;
+
+import org.protege.editor.owl.model.hierarchy.OWLObjectHierarchyProvider;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLEntity;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Export selection made of a class and all of its descendants in a class hierarchy. The hierarchy is walked lazily,
+ * depth first and without recursion, as the selection is iterated, so entities are handed to the exporter as they
+ * are found and the descendants are never collected in a list. Classes that are reached along several paths of
+ * the hierarchy (diamond inheritance) are returned only once.
+ * <br>
+ * Duplicates can only arise below classes with more than one parent, so only such classes are remembered: a class
+ * with a single parent is reached at most as often as its parent is expanded. The memory needed for a walk is thus
+ * proportional to the depth of the hierarchy and to the number of classes with several parents, rather than to the
+ * size of the subtree.
+ * <br>
+ * Since the hierarchy is read while the selection is iterated, an iteration during which the hierarchy changes may
+ * miss classes or fail. Exports iterate on a background thread while the ontology can still be edited, and start
+ * over if it is, see {@link CsvExporter#export()}.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class SubclassTreeSelection implements Iterable<OWLEntity> {
+    private final OWLClass root;
+    private final OWLObjectHierarchyProvider<OWLClass> hierarchyProvider;
+
+    /**
+     * Constructor
+     *
+     * @param root  Class at the root of the subtree, which is the first entity of the selection
+     * @param hierarchyProvider Class hierarchy to walk
+     */
+    public SubclassTreeSelection(OWLClass root, OWLObjectHierarchyProvider<OWLClass> hierarchyProvider) {
+        this.root = checkNotNull(root);
+        this.hierarchyProvider = checkNotNull(hierarchyProvider);
+    }
+
+    public OWLClass getRoot() {
+        return root;
+    }
+
+    @Override
+    public Iterator<OWLEntity> iterator() {
+        return new SubtreeIterator();
+    }
+
+    /**
+     * Pre-order walk over the subtree, keeping one iterator over the children of each class on the current path
+     */
+    private final class SubtreeIterator implements Iterator<OWLEntity> {
+        private final Deque<Iterator<OWLClass>> stack = new ArrayDeque<>();
+        private final Set<OWLClass> visitedWithSeveralParents = new HashSet<>();
+        private OWLClass next;
+
+        SubtreeIterator() {
+            next = root;
+            visitedWithSeveralParents.add(root); // guards against cycles through the root
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next == null) {
+                next = findNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public OWLEntity next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            OWLClass cls = next;
+            next = null;
+            stack.push(hierarchyProvider.getChildren(cls).iterator());
+            return cls;
+        }
+
+        private OWLClass findNext() {
+            while(!stack.isEmpty()) {
+                Iterator<OWLClass> children = stack.peek();
+                if(!children.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                OWLClass child = children.next();
+                boolean singleParent = hierarchyProvider.getParents(child).size() < 2 && !child.equals(root);
+                if(singleParent || visitedWithSeveralParents.add(child)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +36,7 @@ public class AddEntityToExportDialogPanel extends JPanel implements VerifiedInpu
     private boolean currentlyValid = false;
     private List<OWLEntity> selectedEntities, entitiesToExclude;
     private SortedListModel<OWLEntity> listModel = new SortedListModel<>();
+    private EntityListFilter listFilter;
 
     /**
      * Constructor
@@ -64,6 +66,7 @@ public class AddEntityToExportDialogPanel extends JPanel implements VerifiedInpu
         propertiesScrollpane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 
         int widest = UiUtils.getWidestEntityStringRendering(editorKit, allEntitiesList, getFontMetrics(getFont()));
+        UiUtils.setFixedCellSize(entitiesList, allEntitiesList.isEmpty() ? null : allEntitiesList.get(0), widest);
         propertiesScrollpane.setPreferredSize(new Dimension(widest, 250));
 
         Insets insets = new Insets(2, 2, 2, 2);
@@ -87,9 +90,9 @@ public class AddEntityToExportDialogPanel extends JPanel implements VerifiedInpu
 
         allEntitiesList = new ArrayList<>(editorKit.getModelManager().getActiveOntology().getSignature());
         if(!entitiesToExclude.isEmpty()) {
-            allEntitiesList.removeAll(entitiesToExclude);
+            allEntitiesList.removeAll(new HashSet<>(entitiesToExclude));
         }
-        listModel.addAll(allEntitiesList);
+        listFilter = new EntityListFilter(editorKit, listModel, allEntitiesList);
     }
 
     private ListSelectionListener listSelectionListener = e -> {
@@ -135,13 +138,18 @@ public class AddEntityToExportDialogPanel extends JPanel implements VerifiedInpu
     }
 
     private void filterTextField() {
-        UiUtils.filterTextField(editorKit, listModel, filterTextField.getText(), allEntitiesList);
+        listFilter.filter(filterTextField.getText());
     }
 
     public static Optional<List<OWLEntity>> showDialog(OWLEditorKit editorKit, List<OWLEntity> entitiesToExlude) {
         AddEntityToExportDialogPanel panel = new AddEntityToExportDialogPanel(editorKit, entitiesToExlude);
-        int response = JOptionPaneEx.showValidatingConfirmDialog(
-                editorKit.getOWLWorkspace(), "Choose entities to export", panel, JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION, null);
+        int response;
+        try {
+            response = JOptionPaneEx.showValidatingConfirmDialog(
+                    editorKit.getOWLWorkspace(), "Choose entities to export", panel, JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION, null);
+        } finally {
+            panel.listFilter.dispose();
+        }
         if (response == JOptionPane.OK_OPTION) {
             return Optional.ofNullable(panel.getSelectedEntities());
         }
@@ -14,6 +14,7 @@ import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +36,7 @@ public class AddPropertyToExportDialogPanel extends JPanel implements VerifiedIn
     private boolean currentlyValid = false;
     private List<OWLEntity> selectedProperties, propertiesToExclude;
     private SortedListModel<OWLEntity> listModel = new SortedListModel<>();
+    private EntityListFilter listFilter;
 
     /**
      * Constructor
@@ -64,6 +66,7 @@ public class AddPropertyToExportDialogPanel extends JPanel implements VerifiedIn
         propertiesScrollpane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 
         int widest = UiUtils.getWidestEntityStringRendering(editorKit, allPropertiesList, getFontMetrics(getFont()));
+        UiUtils.setFixedCellSize(propertiesList, allPropertiesList.isEmpty() ? null : allPropertiesList.get(0), widest);
         propertiesScrollpane.setPreferredSize(new Dimension(widest, 250));
 
         Insets insets = new Insets(2, 2, 2, 2);
@@ -87,9 +90,9 @@ public class AddPropertyToExportDialogPanel extends JPanel implements VerifiedIn
 
         allPropertiesList = UiUtils.getProperties(editorKit);
         if(!propertiesToExclude.isEmpty()) {
-            allPropertiesList.removeAll(propertiesToExclude);
+            allPropertiesList.removeAll(new HashSet<>(propertiesToExclude));
         }
-        listModel.addAll(allPropertiesList);
+        listFilter = new EntityListFilter(editorKit, listModel, allPropertiesList);
     }
 
     private ListSelectionListener listSelectionListener = e -> {
@@ -135,13 +138,18 @@ public class AddPropertyToExportDialogPanel extends JPanel implements VerifiedIn
     }
 
     private void filterTextField() {
-        UiUtils.filterTextField(editorKit, listModel, filterTextField.getText(), allPropertiesList);
+        listFilter.filter(filterTextField.getText());
     }
 
     public static Optional<List<OWLEntity>> showDialog(OWLEditorKit editorKit, List<OWLEntity> propertiesToExlude) {
         AddPropertyToExportDialogPanel panel = new AddPropertyToExportDialogPanel(editorKit, propertiesToExlude);
-        int response = JOptionPaneEx.showValidatingConfirmDialog(
-                editorKit.getOWLWorkspace(), "Choose properties to export", panel, JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION, null);
+        int response;
+        try {
+            response = JOptionPaneEx.showValidatingConfirmDialog(
+                    editorKit.getOWLWorkspace(), "Choose properties to export", panel, JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION, null);
+        } finally {
+            panel.listFilter.dispose();
+        }
         if (response == JOptionPane.OK_OPTION) {
             return Optional.ofNullable(panel.getSelectedProperties());
         }
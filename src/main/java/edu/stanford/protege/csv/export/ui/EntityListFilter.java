@@ -0,0 +1,255 @@
+package edu.stanford.protege.csv.export.ui;
+
+import org.protege.editor.owl.OWLEditorKit;
+import org.protege.editor.owl.ui.renderer.OWLModelManagerEntityRenderer;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Fills a list with entities and filters them as the user types in a filter text field. The list is filled in
+ * sorted chunks by a background worker, so that the dialog holding it can be shown before all entities are in the
+ * list. The names of the entities are indexed as soon as the filter is created (see {@link EntityNameIndex}): they
+ * are rendered on the event dispatch thread, since the Protégé renderer is not thread-safe, in batches of
+ * {@link #RENDERING_BATCH_SIZE} queued between other events so that the dialog stays responsive, and indexed in
+ * the background once all are rendered. Searches start once the user has stopped typing for {@link #DEBOUNCE_DELAY}
+ * milliseconds, run off the event dispatch thread, and show their matches in the list in chunks as they are found.
+ * Starting a search cancels the previous one, or the filling of the list. The filter must be disposed of when the
+ * dialog holding the list is closed.
+ * <br>
+ * As before, the list shows all entities when the filter text is empty or nothing matches it.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class EntityListFilter {
+    private static final Logger logger = LoggerFactory.getLogger(EntityListFilter.class.getName());
+    static final int DEBOUNCE_DELAY = 200;
+    private static final int CHUNK_SIZE = 1000;
+    static final int RENDERING_BATCH_SIZE = 2000;
+    private final SortedListModel<OWLEntity> listModel;
+    private final List<OWLEntity> allEntities;
+    private final CompletableFuture<EntityNameIndex> index = new CompletableFuture<>();
+    private final Timer timer;
+    private volatile List<OWLEntity> sortedEntities;
+    private String query = "";
+    private ListWorker listWorker;
+    private SwingWorker<Void, Void> indexer;
+    private boolean disposed = false;
+
+    /**
+     * Constructor
+     *
+     * @param editorKit OWL Editor Kit
+     * @param listModel Model of the list to fill and filter
+     * @param allEntities   All entities that the list can show
+     */
+    EntityListFilter(OWLEditorKit editorKit, SortedListModel<OWLEntity> listModel, List<OWLEntity> allEntities) {
+        this.listModel = checkNotNull(listModel);
+        this.allEntities = checkNotNull(allEntities);
+        OWLModelManagerEntityRenderer renderer = editorKit.getModelManager().getOWLEntityRenderer();
+        timer = new Timer(DEBOUNCE_DELAY, e -> search());
+        timer.setRepeats(false);
+        start(new FillWorker());
+        renderNames(renderer, new HashMap<>(allEntities.size() * 4 / 3 + 1), 0, System.currentTimeMillis());
+    }
+
+    /**
+     * Render the names of a batch of entities, starting at the given one, and queue the next batch on the event
+     * dispatch thread. Once all names are rendered, they are indexed in the background.
+     */
+    private void renderNames(OWLModelManagerEntityRenderer renderer, Map<OWLEntity, String> names, int from, long start) {
+        if(disposed) {
+            return;
+        }
+        int to = Math.min(allEntities.size(), from + RENDERING_BATCH_SIZE);
+        for(int i = from; i < to; i++) {
+            OWLEntity entity = allEntities.get(i);
+            names.put(entity, renderer.render(entity));
+        }
+        if(to < allEntities.size()) {
+            SwingUtilities.invokeLater(() -> renderNames(renderer, names, to, start));
+            return;
+        }
+        indexer = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                try {
+                    EntityNameIndex nameIndex = new EntityNameIndex(allEntities, names::get);
+                    logger.info("Rendered and indexed the names of {} entities in {} ms", nameIndex.size(), System.currentTimeMillis() - start);
+                    index.complete(nameIndex);
+                } catch (RuntimeException e) {
+                    index.completeExceptionally(e);
+                    throw e;
+                }
+                return null;
+            }
+        };
+        indexer.execute();
+    }
+
+    /**
+     * Filter the list with the given text, once the user stops typing. Must be called on the event dispatch thread.
+     *
+     * @param text  Filter text
+     */
+    void filter(String text) {
+        query = checkNotNull(text);
+        timer.restart();
+    }
+
+    private void search() {
+        start(query.isEmpty() ? new FillWorker() : new SearchWorker(query));
+    }
+
+    private void start(ListWorker worker) {
+        if(listWorker != null) {
+            listWorker.cancel(true); // interrupts a search still waiting for the index
+        }
+        listWorker = worker;
+        worker.execute();
+    }
+
+    /**
+     * Stop rendering and indexing names, and stop any pending or running search or filling of the list. Must be
+     * called on the event dispatch thread once the dialog holding the list is closed.
+     */
+    void dispose() {
+        disposed = true;
+        timer.stop();
+        if(listWorker != null) {
+            listWorker.cancel(true);
+        }
+        if(indexer != null) {
+            indexer.cancel(true);
+        }
+        index.cancel(false);
+    }
+
+    /**
+     * Produces entities in the sort order of the list and publishes them in chunks, replacing the contents of the
+     * list with the first chunk. Chunks of cancelled workers are ignored.
+     */
+    private abstract class ListWorker extends SwingWorker<Integer, List<OWLEntity>> {
+        private List<OWLEntity> chunk = new ArrayList<>();
+        private int count = 0;
+        private boolean shownFirstChunk = false;
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            produce();
+            if(!chunk.isEmpty()) {
+                publish(chunk);
+            }
+            return count;
+        }
+
+        /**
+         * Pass each entity to {@link #add(OWLEntity)}, stopping early if the worker is cancelled
+         */
+        abstract void produce() throws Exception;
+
+        void add(OWLEntity entity) {
+            chunk.add(entity);
+            count++;
+            if(chunk.size() == CHUNK_SIZE) {
+                publish(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+
+        @Override
+        protected void process(List<List<OWLEntity>> chunks) {
+            if(isCurrent()) {
+                for(List<OWLEntity> chunk : chunks) {
+                    if(shownFirstChunk) {
+                        listModel.addAll(chunk); // chunks come in sort order, so they are appended without a merge
+                    } else {
+                        listModel.setElements(chunk);
+                        shownFirstChunk = true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if(!isCurrent()) {
+                return;
+            }
+            try {
+                if(get() == 0) {
+                    whenEmpty();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Error while filtering entities: {}", e.getMessage(), e);
+            }
+        }
+
+        void whenEmpty() {
+            listModel.clear();
+        }
+
+        private boolean isCurrent() {
+            return listWorker == this && !isCancelled();
+        }
+    }
+
+    /**
+     * Shows all entities, sorting them the first time
+     */
+    private final class FillWorker extends ListWorker {
+        @Override
+        void produce() {
+            List<OWLEntity> entities = sortedEntities;
+            if(entities == null) {
+                entities = new ArrayList<>(new TreeSet<>(allEntities));
+                sortedEntities = entities;
+            }
+            for(int i = 0; i < entities.size() && !isCancelled(); i++) {
+                add(entities.get(i));
+            }
+        }
+    }
+
+    /**
+     * Shows the entities that match a query, or all entities if none does
+     */
+    private final class SearchWorker extends ListWorker {
+        private final String query;
+
+        SearchWorker(String query) {
+            this.query = query;
+        }
+
+        @Override
+        void produce() throws Exception {
+            EntityNameIndex nameIndex = index.get();
+            if(isCancelled()) {
+                return;
+            }
+            PrimitiveIterator.OfInt matches = nameIndex.search(query);
+            while(matches.hasNext() && !isCancelled()) {
+                add(nameIndex.get(matches.nextInt()));
+            }
+        }
+
+        @Override
+        void whenEmpty() {
+            start(new FillWorker());
+        }
+    }
+}
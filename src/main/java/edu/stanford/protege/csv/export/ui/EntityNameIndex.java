@@ -0,0 +1,220 @@
+package edu.stanford.protege.csv.export.ui;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the rendered names of a list of entities, for filtering the list as the user types. Matching is case
+ * insensitive. A query matches the entities whose names contain it, or, if the query contains {@code *} wildcards,
+ * whose names contain the fragments between the wildcards in order. Queries shorter than {@link #NGRAM_LENGTH}
+ * characters without wildcards match names that start with the query, since nearly every name contains them.
+ * <br>
+ * Names are indexed by their trigrams: a query is answered by intersecting the postings of the trigrams of its
+ * fragments and checking the remaining candidates against the query. Prefix queries use binary search over the
+ * sorted names. The entities are kept in their natural order, and matches are returned in that order, so they can
+ * be appended to a sorted list as they are found.
+ * <br>
+ * Instances are immutable once built and can be queried from any thread.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+class EntityNameIndex {
+    static final int NGRAM_LENGTH = 3;
+    private final OWLEntity[] entities;
+    private final String[] names;
+    private final String[] sortedNames;
+    private final int[] sortedNameEntities;
+    private final Map<Long, int[]> postings = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param entities  Entities to index
+     * @param renderer  Renderer of entity names
+     * @throws CancellationException if the thread building the index is interrupted
+     */
+    EntityNameIndex(Collection<? extends OWLEntity> entities, Function<OWLEntity, String> renderer) {
+        checkNotNull(renderer);
+        this.entities = new TreeSet<OWLEntity>(checkNotNull(entities)).toArray(new OWLEntity[0]);
+        names = new String[this.entities.length];
+        Integer[] order = new Integer[this.entities.length];
+        Map<Long, int[]> growing = new HashMap<>();
+        for(int i = 0; i < this.entities.length; i++) {
+            if(i % 4096 == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Interrupted while indexing entity names");
+            }
+            names[i] = renderer.apply(this.entities[i]).toLowerCase(Locale.ROOT);
+            order[i] = i;
+            for(int j = 0; j + NGRAM_LENGTH <= names[i].length(); j++) {
+                addPosting(growing, ngram(names[i], j), i);
+            }
+        }
+        for(Map.Entry<Long, int[]> entry : growing.entrySet()) {
+            int[] list = entry.getValue();
+            postings.put(entry.getKey(), Arrays.copyOfRange(list, 1, list[0] + 1));
+        }
+        Arrays.sort(order, Comparator.comparing(i -> names[i]));
+        sortedNames = new String[order.length];
+        sortedNameEntities = new int[order.length];
+        for(int i = 0; i < order.length; i++) {
+            sortedNames[i] = names[order[i]];
+            sortedNameEntities[i] = order[i];
+        }
+    }
+
+    int size() {
+        return entities.length;
+    }
+
+    OWLEntity get(int index) {
+        return entities[index];
+    }
+
+    /**
+     * Find the entities whose names match the given query. Candidates are checked against the query as the
+     * iterator advances, so a search can be abandoned part way through at little cost.
+     *
+     * @param query Query text
+     * @return Iterator over the indexes of the matching entities, in increasing order
+     */
+    PrimitiveIterator.OfInt search(String query) {
+        String q = checkNotNull(query).toLowerCase(Locale.ROOT);
+        if(q.length() < NGRAM_LENGTH && q.indexOf('*') < 0) {
+            return searchPrefix(q);
+        }
+        List<String> fragments = new ArrayList<>();
+        for(String fragment : q.split("\\*")) {
+            if(!fragment.isEmpty()) {
+                fragments.add(fragment);
+            }
+        }
+        int[] candidates = null;
+        for(String fragment : fragments) {
+            for(int j = 0; j + NGRAM_LENGTH <= fragment.length(); j++) {
+                int[] list = postings.get(ngram(fragment, j));
+                if(list == null) {
+                    return Arrays.stream(new int[0]).iterator();
+                }
+                candidates = (candidates == null ? list : intersect(candidates, list));
+            }
+        }
+        int[] toCheck = (candidates != null ? candidates : range(names.length));
+        return new MatchingIterator(Arrays.stream(toCheck).iterator(), fragments);
+    }
+
+    private PrimitiveIterator.OfInt searchPrefix(String prefix) {
+        int from = 0, to = sortedNames.length;
+        while(from < to) { // first name not less than the prefix; names may repeat, so binary search would not do
+            int mid = (from + to) >>> 1;
+            if(sortedNames[mid].compareTo(prefix) < 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        while(to < sortedNames.length && sortedNames[to].startsWith(prefix)) {
+            to++;
+        }
+        int[] matches = Arrays.copyOfRange(sortedNameEntities, from, to);
+        Arrays.sort(matches);
+        return Arrays.stream(matches).iterator();
+    }
+
+    private boolean matches(int index, List<String> fragments) {
+        String name = names[index];
+        int from = 0;
+        for(String fragment : fragments) {
+            int found = name.indexOf(fragment, from);
+            if(found < 0) {
+                return false;
+            }
+            from = found + fragment.length();
+        }
+        return true;
+    }
+
+    /**
+     * Iterator that skips the candidates whose names do not match the query
+     */
+    private final class MatchingIterator implements PrimitiveIterator.OfInt {
+        private final PrimitiveIterator.OfInt candidates;
+        private final List<String> fragments;
+        private int next = -1;
+
+        MatchingIterator(PrimitiveIterator.OfInt candidates, List<String> fragments) {
+            this.candidates = candidates;
+            this.fragments = fragments;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(next < 0 && candidates.hasNext()) {
+                int candidate = candidates.nextInt();
+                if(matches(candidate, fragments)) {
+                    next = candidate;
+                }
+            }
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int match = next;
+            next = -1;
+            return match;
+        }
+    }
+
+    private static long ngram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    private static void addPosting(Map<Long, int[]> growing, long ngram, int index) {
+        int[] list = growing.get(ngram);
+        if(list == null) {
+            list = new int[4];
+            growing.put(ngram, list);
+        } else if(list[0] > 0 && list[list[0]] == index) {
+            return; // the name contains the n-gram more than once
+        } else if(list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            growing.put(ngram, list);
+        }
+        list[++list[0]] = index;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] < b[j]) {
+                i++;
+            } else if(a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] range(int length) {
+        int[] range = new int[length];
+        for(int i = 0; i < length; i++) {
+            range[i] = i;
+        }
+        return range;
+    }
+}
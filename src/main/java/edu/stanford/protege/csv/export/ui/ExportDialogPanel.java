@@ -3,6 +3,8 @@ package edu.stanford.protege.csv.export.ui;
 import com.google.common.base.Objects;
 import edu.stanford.protege.csv.export.CsvExporter;
 import edu.stanford.protege.csv.export.CsvExporterBuilder;
+import edu.stanford.protege.csv.export.ExportProgressMonitor;
+import edu.stanford.protege.csv.export.HierarchySource;
 import org.protege.editor.core.ui.list.MList;
 import org.protege.editor.core.ui.list.MListItem;
 import org.protege.editor.core.ui.list.MListSectionHeader;
@@ -11,6 +13,7 @@ import org.protege.editor.core.ui.util.JOptionPaneEx;
 import org.protege.editor.core.ui.util.UIUtil;
 import org.protege.editor.core.ui.util.VerifiedInputEditor;
 import org.protege.editor.owl.OWLEditorKit;
+import org.protege.editor.owl.model.inference.ReasonerStatus;
 import org.semanticweb.owlapi.model.OWLEntity;
 
 import javax.swing.*;
@@ -19,7 +22,6 @@ import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -35,10 +37,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
     private static final long serialVersionUID = 4808084373916448633L;
     private OWLEditorKit editorKit;
-    private final List<OWLEntity> output;
+    private final Iterable<OWLEntity> output;
     private JLabel fileLocationLbl, outputLbl, propertiesLbl, fileDelimLbl, propertyValuesDelimLbl;
     private JTextField fileLocationTxtField, fileDelim, propertyValuesDelim;
-    private JCheckBox includePropertyNames, includeEntityTypes, useCurrentRendering, includeSuperclasses, includeCustomText;
+    private JCheckBox includePropertyNames, includeEntityTypes, useCurrentRendering, includeSuperclasses, includeInferredSuperclasses,
+            includeInferredTypes, includeAncestors, includeCustomText;
+    private JComboBox<HierarchySource> ancestorsHierarchy;
     private JButton browseBtn, editCustomTextBtn;
     private MList propertiesList, outputEntitiesList;
     private List<InputVerificationStatusChangedListener> listeners = new ArrayList<>();
@@ -52,10 +56,10 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
      *
      * @param editorKit OWL Editor Kit
      * @param customText    Custom text to appear at the end of the CSV file
-     * @param output  List of OWL entities that will be exported
+     * @param output  OWL entities that will be exported
      * @param allowOutputModifications  true if modifications to the given list of output entities are allowed, false otherwise
      */
-    public ExportDialogPanel(OWLEditorKit editorKit, String customText, List<OWLEntity> output, boolean allowOutputModifications) {
+    public ExportDialogPanel(OWLEditorKit editorKit, String customText, Iterable<OWLEntity> output, boolean allowOutputModifications) {
         this.editorKit = checkNotNull(editorKit);
         this.customText = checkNotNull(customText);
         this.output = checkNotNull(output);
@@ -109,6 +113,13 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
         rowIndex++;
         add(includeSuperclasses, new GridBagConstraints(0, rowIndex, 2, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(2, 0, 2, 2), 0, 0));
         rowIndex++;
+        add(includeInferredSuperclasses, new GridBagConstraints(0, rowIndex, 2, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(2, 0, 2, 2), 0, 0));
+        rowIndex++;
+        add(includeInferredTypes, new GridBagConstraints(0, rowIndex, 2, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(2, 0, 2, 2), 0, 0));
+        rowIndex++;
+        add(includeAncestors, new GridBagConstraints(0, rowIndex, 1, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(2, 0, 2, 2), 0, 0));
+        add(ancestorsHierarchy, new GridBagConstraints(1, rowIndex, 1, 1, 0.0, 0.0, GridBagConstraints.BASELINE_TRAILING, GridBagConstraints.NONE, new Insets(2, 0, 2, 2), 0, 0));
+        rowIndex++;
         add(includeCustomText, new GridBagConstraints(0, rowIndex, 1, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(2, 0, 2, 2), 0, 0));
         add(editCustomTextBtn, new GridBagConstraints(1, rowIndex, 1, 1, 0.0, 0.0, GridBagConstraints.BASELINE_TRAILING, GridBagConstraints.NONE, new Insets(2, 0, 2, 2), 0, 0));
     }
@@ -142,6 +153,25 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
         includeEntityTypes = new JCheckBox("Include column with entity types");
         useCurrentRendering = new JCheckBox("Use current rendering instead of IRIs");
         includeSuperclasses = new JCheckBox("Include column with superclasses");
+        includeInferredSuperclasses = new JCheckBox("Include column with inferred superclasses");
+        includeInferredTypes = new JCheckBox("Include column with inferred types of individuals");
+        includeAncestors = new JCheckBox("Include column with all ancestors of classes, from the");
+        ReasonerStatus reasonerStatus = editorKit.getModelManager().getOWLReasonerManager().getReasonerStatus();
+        boolean classified = (reasonerStatus == ReasonerStatus.INITIALIZED); // not OUT_OF_SYNC, whose inferences are stale
+        String reasonerToolTip = null;
+        if(reasonerStatus == ReasonerStatus.OUT_OF_SYNC) {
+            reasonerToolTip = "Synchronize the reasoner to export inferred hierarchy information";
+        } else if(!classified) {
+            reasonerToolTip = "Start a reasoner to export inferred hierarchy information";
+        }
+        for(JCheckBox checkBox : new JCheckBox[]{includeInferredSuperclasses, includeInferredTypes}) {
+            checkBox.setEnabled(classified);
+            checkBox.setToolTipText(reasonerToolTip);
+        }
+        ancestorsHierarchy = new JComboBox<>(classified ? HierarchySource.values() : new HierarchySource[]{HierarchySource.ASSERTED});
+        ancestorsHierarchy.setToolTipText(reasonerToolTip);
+        ancestorsHierarchy.setEnabled(false);
+        includeAncestors.addActionListener(e -> ancestorsHierarchy.setEnabled(includeAncestors.isSelected()));
         includeCustomText = new JCheckBox("Include custom text in last line");
     }
 
@@ -165,7 +195,9 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
 
         List<Object> data = new ArrayList<>();
         data.add(new OwlEntityListHeaderItem());
-        data.addAll(output.stream().map(OwlEntityListItem::new).collect(Collectors.toList()));
+        for(OWLEntity entity : output) {
+            data.add(new OwlEntityListItem(entity));
+        }
         outputEntitiesList.setListData(data.toArray());
     }
 
@@ -312,8 +344,8 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
         propertiesList.setListData(items.toArray());
     }
 
-    private void exportToCsv() throws IOException {
-        CsvExporter csvExporter = new CsvExporterBuilder(editorKit, selectedFile)
+    private CsvExporter createExporter(ExportProgressMonitor progressMonitor) {
+        return new CsvExporterBuilder(editorKit, selectedFile)
                 .setOutputProperties((allowOutputModifications ? getEntities(outputEntitiesList) : output))
                 .setProperties(getEntities(propertiesList))
                 .setFileDelimiter(fileDelim.getText())
@@ -322,10 +354,14 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
                 .setIncludeCustomText(includeCustomText.isSelected())
                 .setIncludeHeaders(includePropertyNames.isSelected())
                 .setIncludeSuperclasses(includeSuperclasses.isSelected())
+                .setIncludeInferredSuperclasses(includeInferredSuperclasses.isSelected())
+                .setIncludeInferredTypes(includeInferredTypes.isSelected())
+                .setIncludeAncestors(includeAncestors.isSelected())
+                .setAncestorsHierarchy((HierarchySource) ancestorsHierarchy.getSelectedItem())
                 .setUseCurrentRendering(useCurrentRendering.isSelected())
                 .setCustomText(customText)
+                .setProgressMonitor(progressMonitor)
                 .build();
-        csvExporter.export();
     }
 
     private List<OWLEntity> getEntities(JList list) {
@@ -347,12 +383,26 @@ public class ExportDialogPanel extends JPanel implements VerifiedInputEditor {
         return properties;
     }
 
-    public static boolean showDialog(OWLEditorKit editorKit, String customText, List<OWLEntity> results, boolean allowOutputAlterations) throws IOException {
+    /**
+     * Show the export dialog and, if confirmed, start the export in the background, see
+     * {@link ExportProgressPanel#runExport(CsvExporter)}
+     *
+     * @return true if an export was started, false if the dialog was cancelled
+     */
+    public static boolean showDialog(OWLEditorKit editorKit, String customText, Iterable<OWLEntity> results, boolean allowOutputAlterations) {
         ExportDialogPanel panel = new ExportDialogPanel(editorKit, customText, results, allowOutputAlterations);
         int response = JOptionPaneEx.showValidatingConfirmDialog(
                 editorKit.getOWLWorkspace(), "Export to CSV file", panel, JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION, null);
         if (response == JOptionPane.OK_OPTION) {
-            panel.exportToCsv();
+            ExportProgressPanel progressPanel = new ExportProgressPanel(editorKit, panel.selectedFile);
+            CsvExporter exporter;
+            try {
+                exporter = panel.createExporter(progressPanel);
+            } catch (IllegalStateException e) { // e.g. the reasoner went out of sync while the dialog was open
+                JOptionPane.showMessageDialog(editorKit.getOWLWorkspace(), e.getMessage(), "Export to CSV file", JOptionPane.ERROR_MESSAGE);
+                return false;
+            }
+            progressPanel.runExport(exporter);
             return true;
         }
         return false;
@@ -0,0 +1,165 @@
+package edu.stanford.protege.csv.export.ui;
+
+import edu.stanford.protege.csv.export.CsvExporter;
+import edu.stanford.protege.csv.export.ExportCancelledException;
+import edu.stanford.protege.csv.export.ExportProgressMonitor;
+import org.protege.editor.core.ui.error.ErrorLogPanel;
+import org.protege.editor.owl.OWLEditorKit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Panel that runs an export in the background and shows its progress in a non-modal dialog: the number of rows
+ * written, the rate at which they are written and the estimated time left. The export can be cancelled from the
+ * dialog, in which case the partially written file is removed.
+ * <br>
+ * The ontology can be edited while the export runs. The export reads the ontology from a background thread, and
+ * starts over if the ontology changes meanwhile (see {@link CsvExporter#export()}), in which case the progress
+ * shown starts over too.
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ExportProgressPanel extends JPanel implements ExportProgressMonitor {
+    private static final long serialVersionUID = -3419560381956257764L;
+    private static final Logger logger = LoggerFactory.getLogger(ExportProgressPanel.class.getName());
+    private static final int REFRESH_INTERVAL_MILLIS = 250;
+    private final OWLEditorKit editorKit;
+    private final File outputFile;
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MILLIS, e -> updateProgress());
+    private JProgressBar progressBar;
+    private JLabel fileLbl, progressLbl;
+    private JButton cancelBtn;
+    private JDialog dialog;
+    private volatile long rowsDone = 0, totalRows = -1;
+    private volatile boolean cancelled = false;
+    private long startTime;
+
+    /**
+     * Constructor
+     *
+     * @param editorKit OWL Editor Kit
+     * @param outputFile    Output file of the export
+     */
+    public ExportProgressPanel(OWLEditorKit editorKit, File outputFile) {
+        this.editorKit = checkNotNull(editorKit);
+        this.outputFile = checkNotNull(outputFile);
+        initUi();
+    }
+
+    private void initUi() {
+        setLayout(new GridBagLayout());
+        setPreferredSize(new Dimension(450, 110));
+        fileLbl = new JLabel("Exporting to " + outputFile.getName());
+        progressLbl = new JLabel("Preparing export...");
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        cancelBtn = new JButton("Cancel");
+        cancelBtn.addActionListener(e -> {
+            cancelled = true;
+            cancelBtn.setEnabled(false);
+            progressLbl.setText("Cancelling...");
+        });
+
+        Insets insets = new Insets(2, 2, 2, 2);
+        int rowIndex = 0;
+        add(fileLbl, new GridBagConstraints(0, rowIndex, 2, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, new Insets(8, 2, 2, 2), 0, 0));
+        rowIndex++;
+        add(progressBar, new GridBagConstraints(0, rowIndex, 2, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, insets, 0, 0));
+        rowIndex++;
+        add(progressLbl, new GridBagConstraints(0, rowIndex, 1, 1, 1.0, 0.0, GridBagConstraints.BASELINE_LEADING, GridBagConstraints.HORIZONTAL, insets, 0, 0));
+        add(cancelBtn, new GridBagConstraints(1, rowIndex, 1, 1, 0.0, 0.0, GridBagConstraints.BASELINE_TRAILING, GridBagConstraints.NONE, insets, 0, 0));
+    }
+
+    /**
+     * Run the given export in the background while showing this panel in a non-modal dialog. The exporter
+     * should have been built with this panel as its progress monitor.
+     *
+     * @param exporter  CSV exporter
+     */
+    public void runExport(CsvExporter exporter) {
+        checkNotNull(exporter);
+        dialog = new JDialog(SwingUtilities.getWindowAncestor(editorKit.getOWLWorkspace()), "Export to CSV file", Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        dialog.setContentPane(this);
+        dialog.pack();
+        dialog.setLocationRelativeTo(dialog.getOwner());
+        startTime = System.nanoTime();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                exporter.export();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                refreshTimer.stop();
+                dialog.dispose();
+                try {
+                    get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if(e.getCause() instanceof ExportCancelledException) {
+                        logger.info("Export to {} cancelled", outputFile.getAbsolutePath());
+                    } else {
+                        ErrorLogPanel.showErrorDialog(e.getCause());
+                    }
+                }
+            }
+        }.execute();
+        refreshTimer.start();
+        dialog.setVisible(true);
+    }
+
+    @Override
+    public void rowsExported(long rowsDone, long totalRows) {
+        this.rowsDone = rowsDone;
+        this.totalRows = totalRows;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void updateProgress() {
+        if(cancelled) {
+            return;
+        }
+        long done = rowsDone, total = totalRows;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double rowsPerSecond = (seconds > 0 ? done / seconds : 0);
+        String text = String.format("%,d", done) + (total >= 0 ? String.format(" of %,d", total) : "") + " rows";
+        if(done > 0) {
+            text += String.format(", %,.0f rows/s", rowsPerSecond);
+        }
+        if(total > 0) {
+            progressBar.setIndeterminate(false);
+            progressBar.setMaximum(1000);
+            progressBar.setValue((int) (done * 1000 / total));
+            if(done > 0 && done < total) {
+                text += ", about " + formatDuration((long) ((total - done) / rowsPerSecond)) + " left";
+            }
+        }
+        progressLbl.setText(text);
+    }
+
+    private static String formatDuration(long seconds) {
+        long minutes = TimeUnit.SECONDS.toMinutes(seconds);
+        if(minutes == 0) {
+            return seconds + " s";
+        }
+        return minutes + " min " + (seconds - TimeUnit.MINUTES.toSeconds(minutes)) + " s";
+    }
+}
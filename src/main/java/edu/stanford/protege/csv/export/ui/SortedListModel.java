@@ -3,36 +3,65 @@ package edu.stanford.protege.csv.export.ui;
 import javax.swing.*;
 import java.util.*;
 
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
+ * List model that keeps its elements sorted and free of duplicates. The elements are held in a sorted array, so
+ * that the list can get any element by index in constant time while rendering, and elements are found by binary
+ * search. Changes are reported as interval events covering only the elements added or removed, so that the list
+ * does not have to revalidate all of its rows.
+ * <br>
+ * Elements are sorted by their natural ordering unless a comparator is given.
+ *
  * @author Rafael Gonçalves <br>
  * Center for Biomedical Informatics Research <br>
  * Stanford University
  */
 public class SortedListModel<E> extends AbstractListModel<E> {
-    private SortedSet<E> model = new TreeSet<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private final Comparator<? super E> comparator;
+    private E[] elements = newArray(INITIAL_CAPACITY);
+    private int size = 0;
 
     /**
-     * No-arguments constructor
+     * No-arguments constructor, for elements sorted by their natural ordering
      */
-    public SortedListModel() { }
+    @SuppressWarnings("unchecked")
+    public SortedListModel() {
+        this((Comparator<? super E>) Comparator.naturalOrder());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param comparator    Comparator that sorts the elements
+     */
+    public SortedListModel(Comparator<? super E> comparator) {
+        this.comparator = checkNotNull(comparator);
+    }
 
     @Override
     public int getSize() {
-        return model.size();
+        return size;
     }
 
     @Override
     public E getElementAt(int index) {
-        checkNotNull(index);
-        return (E) model.toArray()[index];
+        checkElementIndex(index, size);
+        return elements[index];
     }
 
     public void add(E element) {
         checkNotNull(element);
-        if (model.add(element)) {
-            fireContentsChanged(this, 0, getSize());
+        int index = indexOf(element);
+        if(index < 0) {
+            index = -index - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            fireIntervalAdded(this, index, index);
         }
     }
 
@@ -42,40 +71,147 @@ public class SortedListModel<E> extends AbstractListModel<E> {
         addAll(c);
     }
 
+    /**
+     * Add the given elements, merging them into the sorted elements of the model. One interval event is fired for
+     * each run of consecutive new elements in the resulting list. Elements that all sort after the last element of
+     * the model, such as the chunks of a list filled in order, are appended without a merge, in time proportional to
+     * their number rather than to the size of the model.
+     */
     public void addAll(Collection<E> elements) {
         checkNotNull(elements);
-        model.addAll(elements);
-        fireContentsChanged(this, 0, getSize());
+        E[] added = sortedDistinct(elements);
+        if(added.length == 0) {
+            return;
+        }
+        if(size == 0) {
+            this.elements = added;
+            size = added.length;
+            fireIntervalAdded(this, 0, size - 1);
+            return;
+        }
+        if(comparator.compare(added[0], this.elements[size - 1]) > 0) {
+            ensureCapacity(size + added.length);
+            System.arraycopy(added, 0, this.elements, size, added.length);
+            int first = size;
+            size += added.length;
+            fireIntervalAdded(this, first, size - 1);
+            return;
+        }
+        E[] merged = newArray(size + added.length);
+        boolean[] isNew = new boolean[merged.length];
+        int i = 0, j = 0, k = 0;
+        while(i < size || j < added.length) {
+            int cmp = (i == size ? 1 : j == added.length ? -1 : comparator.compare(this.elements[i], added[j]));
+            if(cmp <= 0) {
+                if(cmp == 0) {
+                    j++; // already in the model
+                }
+                merged[k++] = this.elements[i++];
+            } else {
+                isNew[k] = true;
+                merged[k++] = added[j++];
+            }
+        }
+        this.elements = merged;
+        size = k;
+        for(int start = 0; start < size; start++) {
+            if(isNew[start]) {
+                int end = start;
+                while(end + 1 < size && isNew[end + 1]) {
+                    end++;
+                }
+                fireIntervalAdded(this, start, end);
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Replace all elements of the model with the given ones
+     */
+    public void setElements(Collection<E> elements) {
+        checkNotNull(elements);
+        clear();
+        addAll(elements);
     }
 
     public void clear() {
-        model.clear();
-        fireContentsChanged(this, 0, getSize());
+        if(size > 0) {
+            int last = size - 1;
+            elements = newArray(INITIAL_CAPACITY);
+            size = 0;
+            fireIntervalRemoved(this, 0, last);
+        }
     }
 
     public boolean contains(E element) {
         checkNotNull(element);
-        return model.contains(element);
+        return indexOf(element) >= 0;
     }
 
     public E firstElement() {
-        return model.first();
+        if(size == 0) {
+            throw new NoSuchElementException();
+        }
+        return elements[0];
     }
 
     public Iterator<E> iterator() {
-        return model.iterator();
+        return Collections.unmodifiableList(Arrays.asList(elements).subList(0, size)).iterator();
     }
 
     public E lastElement() {
-        return model.last();
+        if(size == 0) {
+            throw new NoSuchElementException();
+        }
+        return elements[size - 1];
     }
 
     public boolean removeElement(E element) {
         checkNotNull(element);
-        boolean removed = model.remove(element);
-        if (removed) {
-            fireContentsChanged(this, 0, getSize());
+        int index = indexOf(element);
+        if(index < 0) {
+            return false;
+        }
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        fireIntervalRemoved(this, index, index);
+        return true;
+    }
+
+    /**
+     * Find the given element by binary search
+     *
+     * @return Index of the element if it is in the model, otherwise (-(insertion point) - 1)
+     */
+    private int indexOf(E element) {
+        return Arrays.binarySearch(elements, 0, size, element, comparator);
+    }
+
+    private E[] sortedDistinct(Collection<E> collection) {
+        E[] array = newArray(collection.size());
+        int n = 0;
+        for(E element : collection) {
+            array[n++] = checkNotNull(element);
+        }
+        Arrays.sort(array, 0, n, comparator);
+        int distinct = 0;
+        for(int i = 0; i < n; i++) {
+            if(distinct == 0 || comparator.compare(array[distinct - 1], array[i]) != 0) {
+                array[distinct++] = array[i];
+            }
+        }
+        return (distinct == array.length ? array : Arrays.copyOf(array, distinct));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length * 2));
         }
-        return removed;
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    private static <E> E[] newArray(int length) {
+        return (E[]) new Object[length];
+    }
+}
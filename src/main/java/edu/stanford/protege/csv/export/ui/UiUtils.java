@@ -1,11 +1,11 @@
 package edu.stanford.protege.csv.export.ui;
 
 import org.protege.editor.owl.OWLEditorKit;
-import org.protege.editor.owl.model.find.OWLEntityFinder;
 import org.protege.editor.owl.ui.renderer.OWLModelManagerEntityRenderer;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
@@ -22,6 +22,7 @@ class UiUtils {
 
     static final Border MATTE_BORDER = new MatteBorder(1, 1, 1, 1, new Color(220, 220, 220));
     static final Border EMPTY_BORDER = new EmptyBorder(0, 0, 0, 0);
+    static final int WIDTH_SAMPLE_SIZE = 1000;
 
     static List<OWLEntity> getProperties(OWLEditorKit editorKit) {
         List<OWLEntity> entities = new ArrayList<>();
@@ -32,43 +33,47 @@ class UiUtils {
         return entities;
     }
 
-    static int getWidestEntityStringRendering(OWLEditorKit editorKit, Collection<? extends OWLEntity> entities, FontMetrics fontMetrics) {
+    /**
+     * Get the width needed to show the renderings of the given entities, measured over a sample of at most
+     * {@link #WIDTH_SAMPLE_SIZE} entities spread evenly over the list, so that large lists are not rendered in full.
+     * Entities left out of the sample may have wider renderings, which the entity lists of the dialogs, having no
+     * horizontal scroll bar, cut short with an ellipsis. The width measured over a sample is widened by a tenth to
+     * make this less likely.
+     *
+     * @param editorKit OWL Editor Kit
+     * @param entities  List of entities
+     * @param fontMetrics   Metrics of the font of the renderings
+     * @return Width in pixels
+     */
+    static int getWidestEntityStringRendering(OWLEditorKit editorKit, List<? extends OWLEntity> entities, FontMetrics fontMetrics) {
         int widest = 0;
         OWLModelManagerEntityRenderer renderer = editorKit.getModelManager().getOWLEntityRenderer();
-        for(OWLEntity e : entities) {
-            String str = renderer.render(e);
+        int step = Math.max(1, (entities.size() + WIDTH_SAMPLE_SIZE - 1) / WIDTH_SAMPLE_SIZE); // rounded up, so the sample is never larger
+        for(int i = 0; i < entities.size(); i += step) {
+            String str = renderer.render(entities.get(i));
             int lineWidth = fontMetrics.stringWidth(str);
             widest = Math.max(widest, lineWidth);
         }
-        return widest+60;
-    }
-
-    static void filterTextField(OWLEditorKit editorKit, SortedListModel<OWLEntity> listModel, String toMatch, List<OWLEntity> allEntitiesList) {
-        List<OWLEntity> filteredEntities = UiUtils.filterEntityList(editorKit, toMatch, allEntitiesList);
-        if(filteredEntities.isEmpty()) {
-            listModel.clear();
-            listModel.addAll(allEntitiesList);
-            return;
+        if(step > 1) {
+            widest += widest / 10;
         }
-        listModel.clear();
-        listModel.addAll(filteredEntities);
+        return widest+60;
     }
 
-    static List<OWLEntity> filterEntityList(OWLEditorKit editorKit, String toMatch, List<OWLEntity> allEntitiesList) {
-        if(toMatch.isEmpty()) {
-            return allEntitiesList;
-        }
-        OWLEntityFinder finder = editorKit.getModelManager().getOWLEntityFinder();
-        List<OWLEntity> output = new ArrayList<>();
-        Set<OWLEntity> entities = finder.getMatchingOWLEntities(toMatch);
-        for(OWLEntity e : entities) {
-            if (allEntitiesList.contains(e)) {
-                output.add(e);
-            }
+    /**
+     * Give all cells of an entity list the size of the cell of a single entity, so that the list does not render
+     * every cell to lay itself out whenever its contents change
+     *
+     * @param list  Entity list, with its cell renderer set
+     * @param sample    Entity whose cell determines the height of all cells, or null to keep the list's sizing
+     * @param width Width of all cells
+     */
+    static void setFixedCellSize(JList<OWLEntity> list, OWLEntity sample, int width) {
+        if(sample != null) {
+            Component cell = list.getCellRenderer().getListCellRendererComponent(list, sample, 0, false, false);
+            list.setFixedCellHeight(cell.getPreferredSize().height);
+            list.setFixedCellWidth(width);
         }
-        List<OWLEntity> filteredEntitiesList = new ArrayList<>(output);
-        Collections.sort(filteredEntitiesList);
-        return filteredEntitiesList;
     }
 
 }
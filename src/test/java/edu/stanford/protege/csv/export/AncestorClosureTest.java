@@ -0,0 +1,114 @@
+package edu.stanford.protege.csv.export;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the ancestors computed by {@link AncestorClosure} for chains, diamonds and cycles, and against a plain
+ * breadth-first walk of random hierarchies, together with their topological order
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class AncestorClosureTest {
+    private static final String NS = "http://example.org/closure#";
+    private static final OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private static final int RUNS = 100;
+
+    @Test
+    public void findsAncestorsOfChainInOrder() {
+        ImmutableSetMultimap<OWLClass, OWLClass> parents = ImmutableSetMultimap.of(cls("B"), cls("A"), cls("C"), cls("B"));
+        AncestorClosure closure = new AncestorClosure(Collections.singleton(cls("C")), parents::get);
+        assertEquals(Arrays.asList(cls("A"), cls("B")), closure.getAncestors(cls("C")));
+        assertEquals(Collections.singletonList(cls("A")), closure.getAncestors(cls("B")));
+        assertEquals(Collections.emptyList(), closure.getAncestors(cls("A")));
+        assertEquals(3, closure.size());
+    }
+
+    @Test
+    public void findsAncestorsOfDiamondOnce() {
+        ImmutableSetMultimap<OWLClass, OWLClass> parents = ImmutableSetMultimap.<OWLClass, OWLClass>builder()
+                .putAll(cls("D"), cls("B"), cls("C"))
+                .put(cls("B"), cls("A"))
+                .put(cls("C"), cls("A"))
+                .build();
+        AncestorClosure closure = new AncestorClosure(Collections.singleton(cls("D")), parents::get);
+        List<OWLClass> ancestors = closure.getAncestors(cls("D"));
+        assertEquals(3, ancestors.size());
+        assertEquals(new HashSet<>(Arrays.asList(cls("A"), cls("B"), cls("C"))), new HashSet<>(ancestors));
+        assertEquals(cls("A"), ancestors.get(0));
+    }
+
+    @Test
+    public void ignoresEdgeClosingCycle() {
+        ImmutableSetMultimap<OWLClass, OWLClass> parents = ImmutableSetMultimap.of(cls("A"), cls("B"), cls("B"), cls("A"), cls("C"), cls("C"));
+        AncestorClosure closure = new AncestorClosure(Arrays.asList(cls("A"), cls("C")), parents::get);
+        assertEquals(Collections.singletonList(cls("B")), closure.getAncestors(cls("A")));
+        assertEquals(Collections.emptyList(), closure.getAncestors(cls("B")));
+        assertEquals(Collections.emptyList(), closure.getAncestors(cls("C")));
+    }
+
+    @Test
+    public void findsNoAncestorsOfClassNotCovered() {
+        AncestorClosure closure = new AncestorClosure(Collections.singleton(cls("A")), c -> Collections.emptySet());
+        assertTrue(closure.getAncestors(cls("B")).isEmpty());
+    }
+
+    @Test
+    public void matchesBreadthFirstWalkOfRandomHierarchies() {
+        Random random = new Random(9);
+        for(int run = 0; run < RUNS; run++) {
+            int classCount = 1 + random.nextInt(60);
+            List<OWLClass> classes = new ArrayList<>();
+            ImmutableSetMultimap.Builder<OWLClass, OWLClass> builder = ImmutableSetMultimap.builder();
+            for(int i = 0; i < classCount; i++) {
+                classes.add(cls("C" + i));
+                for(int k = random.nextInt(4); i > 0 && k > 0; k--) {
+                    builder.put(classes.get(i), classes.get(random.nextInt(i))); // parents come first, so there are no cycles
+                }
+            }
+            ImmutableSetMultimap<OWLClass, OWLClass> parents = builder.build();
+            List<OWLClass> roots = new ArrayList<>(classes);
+            Collections.shuffle(roots, random);
+            AncestorClosure closure = new AncestorClosure(roots, parents::get);
+            for(OWLClass cls : classes) {
+                List<OWLClass> ancestors = closure.getAncestors(cls);
+                assertEquals("Run " + run + ", class " + cls, walkAncestors(cls, parents), new HashSet<>(ancestors));
+                assertEquals("Run " + run + ", class " + cls + " has duplicate ancestors", ancestors.size(), new HashSet<>(ancestors).size());
+                for(int i = 0; i < ancestors.size(); i++) {
+                    for(OWLClass ancestorOfAncestor : closure.getAncestors(ancestors.get(i))) {
+                        assertFalse("Run " + run + ", ancestor " + ancestorOfAncestor + " listed after its descendant",
+                                ancestors.subList(i, ancestors.size()).contains(ancestorOfAncestor));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<OWLClass> walkAncestors(OWLClass cls, ImmutableSetMultimap<OWLClass, OWLClass> parents) {
+        Set<OWLClass> ancestors = new HashSet<>();
+        Deque<OWLClass> queue = new ArrayDeque<>(parents.get(cls));
+        while(!queue.isEmpty()) {
+            OWLClass ancestor = queue.poll();
+            if(ancestors.add(ancestor)) {
+                queue.addAll(parents.get(ancestor));
+            }
+        }
+        return ancestors;
+    }
+
+    private static OWLClass cls(String name) {
+        return df.getOWLClass(IRI.create(NS + name));
+    }
+}
@@ -0,0 +1,144 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that {@link ChannelWriter} writes the same bytes as {@link OutputStreamWriter} for text that mixes ASCII,
+ * other BMP characters, surrogate pairs and lone surrogates, written in pieces of random length with small buffers
+ * so that both surrogate pairs and buffer boundaries are split between writes
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ChannelWriterTest {
+    private static final int[] BUFFER_SIZES = {16, 17, 31, 64, 1024};
+    private static final int RUNS = 50;
+
+    @Test
+    public void writesSameBytesAsOutputStreamWriterInUtf8() throws IOException {
+        checkCharset(StandardCharsets.UTF_8, false);
+    }
+
+    @Test
+    public void writesSameBytesAsOutputStreamWriterInUtf16() throws IOException {
+        checkCharset(StandardCharsets.UTF_16, false);
+    }
+
+    @Test
+    public void replacesUnmappableCharactersAsOutputStreamWriterInLatin1() throws IOException {
+        checkCharset(StandardCharsets.ISO_8859_1, false);
+    }
+
+    @Test
+    public void replacesUnmappableCharactersAsOutputStreamWriterInAscii() throws IOException {
+        checkCharset(StandardCharsets.US_ASCII, false);
+    }
+
+    @Test
+    public void replacesLoneSurrogatesAsOutputStreamWriterInUtf8() throws IOException {
+        checkCharset(StandardCharsets.UTF_8, true);
+    }
+
+    @Test
+    public void replacesLoneSurrogatesAsOutputStreamWriterInUtf16() throws IOException {
+        checkCharset(StandardCharsets.UTF_16, true);
+    }
+
+    private static void checkCharset(Charset charset, boolean loneSurrogates) throws IOException {
+        Random random = new Random(charset.name().hashCode() + (loneSurrogates ? 1 : 0));
+        for(int run = 0; run < RUNS; run++) {
+            String text = randomText(random, 1 + random.nextInt(2000), loneSurrogates);
+            byte[] expected = writeWithOutputStreamWriter(text, charset);
+            for(int bufferSize : BUFFER_SIZES) {
+                long seed = random.nextLong();
+                byte[] actual = writeWithChannelWriter(text, charset, bufferSize, new Random(seed));
+                assertArrayEquals("Charset " + charset + ", buffer size " + bufferSize + ", split seed " + seed,
+                        expected, actual);
+            }
+        }
+    }
+
+    private static byte[] writeWithOutputStreamWriter(String text, Charset charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(Writer writer = new OutputStreamWriter(out, charset)) {
+            writer.write(text);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the given text in pieces of random length, using each of the write methods of the writer in turn
+     */
+    private static byte[] writeWithChannelWriter(String text, Charset charset, int bufferSize, Random random)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(Writer writer = new ChannelWriter(Channels.newChannel(out), charset, bufferSize)) {
+            int off = 0;
+            while(off < text.length()) {
+                int len = Math.min(text.length() - off, random.nextInt(2 * bufferSize) + 1);
+                switch(random.nextInt(4)) {
+                    case 0:
+                        writer.write(text.toCharArray(), off, len);
+                        break;
+                    case 1:
+                        writer.write(text, off, len);
+                        break;
+                    case 2:
+                        len = 1;
+                        writer.write(text.charAt(off));
+                        break;
+                    default:
+                        writer.write(text.substring(off, off + len));
+                        if(random.nextBoolean()) {
+                            writer.flush();
+                        }
+                }
+                off += len;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Generate text in which runs of ASCII characters alternate with runs of other BMP characters and of supplementary
+     * characters, which are written as surrogate pairs
+     */
+    private static String randomText(Random random, int length, boolean loneSurrogates) {
+        StringBuilder text = new StringBuilder(length + 1);
+        while(text.length() < length) {
+            int runLength = 1 + random.nextInt(8);
+            int kind = random.nextInt(loneSurrogates ? 5 : 4);
+            for(int i = 0; i < runLength; i++) {
+                switch(kind) {
+                    case 0:
+                        text.append((char) (0x20 + random.nextInt(0x5F)));
+                        break;
+                    case 1:
+                        text.append((char) (0x80 + random.nextInt(0x780))); // Latin-1 supplement up to NKo
+                        break;
+                    case 2:
+                        text.append((char) (0x4E00 + random.nextInt(0x5200))); // CJK unified ideographs
+                        break;
+                    case 3:
+                        text.appendCodePoint(0x10000 + random.nextInt(0x20000)); // supplementary planes 1 and 2
+                        break;
+                    default:
+                        text.append((char) (Character.MIN_SURROGATE + random.nextInt(0x800)));
+                }
+            }
+        }
+        return text.toString();
+    }
+}
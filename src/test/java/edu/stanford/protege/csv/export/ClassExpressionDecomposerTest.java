@@ -0,0 +1,93 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ClassExpressionDecomposer} finds the restrictions of intersections at any depth of nesting, and
+ * does not descend into unions or complements
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ClassExpressionDecomposerTest {
+    private static final String NS = "http://example.org/decomposer#";
+    private final OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private final OWLClass a = df.getOWLClass(IRI.create(NS + "A")), b = df.getOWLClass(IRI.create(NS + "B")),
+            c = df.getOWLClass(IRI.create(NS + "C"));
+    private final OWLObjectProperty p = df.getOWLObjectProperty(IRI.create(NS + "p")),
+            q = df.getOWLObjectProperty(IRI.create(NS + "q")), r = df.getOWLObjectProperty(IRI.create(NS + "r"));
+    private final OWLNamedIndividual i = df.getOWLNamedIndividual(IRI.create(NS + "i"));
+    private final ClassExpressionDecomposer decomposer = new ClassExpressionDecomposer();
+
+    @Test
+    public void findsRestrictionInIntersection() {
+        OWLClassExpression ce = df.getOWLObjectIntersectionOf(a, df.getOWLObjectSomeValuesFrom(p, b)); // A and (p some B)
+        assertEquals(expected(Arrays.asList(p, b)), found(decomposer.decompose(ce)));
+    }
+
+    @Test
+    public void findsRestrictionsInNestedIntersections() {
+        OWLClassExpression nested = df.getOWLObjectIntersectionOf(df.getOWLObjectHasValue(q, i), df.getOWLObjectSomeValuesFrom(r, c));
+        OWLClassExpression ce = df.getOWLObjectIntersectionOf(a, df.getOWLObjectSomeValuesFrom(p, b), nested); // A and (p some B) and (q value i and (r some C))
+        assertEquals(expected(Arrays.asList(p, b), Arrays.asList(q, i), Arrays.asList(r, c)), found(decomposer.decompose(ce)));
+    }
+
+    @Test
+    public void findsRestrictionThatIsTheWholeExpression() {
+        assertEquals(expected(Arrays.asList(p, b)), found(decomposer.decompose(df.getOWLObjectSomeValuesFrom(p, b))));
+    }
+
+    @Test
+    public void doesNotDescendIntoUnionsOrComplements() {
+        OWLClassExpression union = df.getOWLObjectUnionOf(df.getOWLObjectSomeValuesFrom(p, b), df.getOWLObjectSomeValuesFrom(q, c));
+        OWLClassExpression complement = df.getOWLObjectComplementOf(df.getOWLObjectSomeValuesFrom(r, c));
+        assertTrue(decomposer.decompose(union).isEmpty());
+        assertTrue(decomposer.decompose(complement).isEmpty());
+        assertTrue(decomposer.decompose(df.getOWLObjectIntersectionOf(a, union, complement)).isEmpty());
+    }
+
+    @Test
+    public void findsNoRestrictionsInNamedClass() {
+        assertTrue(decomposer.decompose(a).isEmpty());
+    }
+
+    @Test
+    public void cachesDecompositions() {
+        OWLClassExpression ce = df.getOWLObjectIntersectionOf(a, df.getOWLObjectSomeValuesFrom(p, b));
+        assertSame(decomposer.decompose(ce), decomposer.decompose(df.getOWLObjectIntersectionOf(a, df.getOWLObjectSomeValuesFrom(p, b))));
+    }
+
+    /**
+     * Get the (property, filler) pairs of the given restrictions. Intersections keep their operands in a set, so the
+     * order in which restrictions are found is not checked.
+     */
+    private static Set<List<OWLObject>> found(List<ClassExpressionDecomposer.Restriction> restrictions) {
+        Set<List<OWLObject>> pairs = new HashSet<>();
+        for(ClassExpressionDecomposer.Restriction restriction : restrictions) {
+            pairs.add(Arrays.asList(restriction.getProperty(), restriction.getFiller()));
+        }
+        assertEquals("Restrictions found more than once", restrictions.size(), pairs.size());
+        return pairs;
+    }
+
+    @SafeVarargs
+    private static Set<List<OWLObject>> expected(List<? extends OWLObject>... pairs) {
+        Set<List<OWLObject>> set = new HashSet<>();
+        for(List<? extends OWLObject> pair : pairs) {
+            set.add(Arrays.asList(pair.get(0), pair.get(1)));
+        }
+        return set;
+    }
+}
@@ -0,0 +1,184 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the escaping of {@link CsvRowEncoder}: RFC 4180 quoting of single-valued and multi-valued cells, and cells
+ * written with multi-character file delimiters, which are read back with a parser that splits rows at the first
+ * occurrence of the delimiter outside quotes
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class CsvRowEncoderTest {
+    private static final String[] DELIMITERS = {",", "\t", "||", "ab", "aba", "<->"};
+    private static final String ALPHABET = "ab|<->,\t\"\n\r x";
+    private static final int RUNS = 2000;
+
+    @Test
+    public void writesPlainCellsAsTheyAre() {
+        assertEquals("a,b c,d\n", encodeRow(",", "a", "b c", "d"));
+    }
+
+    @Test
+    public void quotesCellsWithDelimitersQuotesAndLineBreaks() {
+        assertEquals("\"a,b\",\"say \"\"hi\"\"\",\"x\ny\",\"x\ry\"\n", encodeRow(",", "a,b", "say \"hi\"", "x\ny", "x\ry"));
+    }
+
+    @Test
+    public void writesEmptyCells() {
+        assertEquals(",,\n", encodeRow(",", "", "", ""));
+    }
+
+    @Test
+    public void joinsValuesOfMultiValuedCells() {
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        encoder.beginValues();
+        encoder.appendValue("a");
+        encoder.appendQuotedValue("b");
+        encoder.endValues();
+        encoder.appendLastCell("c");
+        encoder.endRow();
+        assertEquals("a;'b',c\n", encoder.takeContents());
+    }
+
+    @Test
+    public void quotesWholeMultiValuedCellIfOneValueNeedsQuotes() {
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        encoder.beginValues();
+        encoder.appendValue("a");
+        encoder.appendValue("b,\"c\"");
+        encoder.endValues();
+        encoder.endRow();
+        assertEquals("\"a;b,\"\"c\"\"\",\n", encoder.takeContents());
+    }
+
+    @Test
+    public void quotesMultiValuedCellIfValuesDelimiterContainsFileDelimiter() {
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ", ");
+        encoder.beginValues();
+        encoder.appendValue("a");
+        encoder.endValues();
+        encoder.beginValues();
+        encoder.appendValue("a");
+        encoder.appendValue("b");
+        encoder.endValues();
+        encoder.endRow();
+        assertEquals("a,\"a, b\",\n", encoder.takeContents());
+    }
+
+    @Test
+    public void quotesCellsContainingMultiCharacterDelimiter() {
+        assertEquals("\"a||b\"||c\n", encodeRow("||", "a||b", "c"));
+        assertEquals("a|b||c\n", encodeRow("||", "a|b", "c"));
+    }
+
+    @Test
+    public void quotesCellsEndingWithPrefixOfMultiCharacterDelimiter() {
+        assertEquals("\"a|\"||b\n", encodeRow("||", "a|", "b"));
+        assertEquals("\"xab\"abay\n", encodeRow("aba", "xab", "y"));
+        assertEquals("a||b|\n", encodeRow("||", "a", "b|")); // the last cell is not followed by the delimiter
+        assertEquals("a|||b\n", encodeRow("||", "a", "|b")); // the delimiter is found before the cell
+    }
+
+    @Test
+    public void quotesMultiValuedCellsEndingWithPrefixOfMultiCharacterDelimiter() {
+        CsvRowEncoder encoder = new CsvRowEncoder("||", ";");
+        encoder.beginValues();
+        encoder.appendValue("a");
+        encoder.appendValue("b|");
+        encoder.endValues();
+        encoder.appendLastCell("c");
+        encoder.endRow();
+        assertEquals("\"a;b|\"||c\n", encoder.takeContents());
+    }
+
+    @Test
+    public void readsBackRandomCells() {
+        Random random = new Random(4180);
+        for(String delimiter : DELIMITERS) {
+            for(int run = 0; run < RUNS; run++) {
+                List<String> cells = new ArrayList<>();
+                int cellCount = 1 + random.nextInt(5);
+                for(int i = 0; i < cellCount; i++) {
+                    cells.add(randomCell(random));
+                }
+                String row = encodeRow(delimiter, cells.toArray(new String[cells.size()]));
+                assertEquals("Delimiter " + delimiter + ", row " + row, cells, parseRow(row, delimiter));
+            }
+        }
+    }
+
+    @Test
+    public void keepsRowEndsWhenQuotingInPlace() {
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        encoder.appendLastCell("a");
+        encoder.endRow();
+        encoder.appendLastCell("b\"c");
+        encoder.endRow();
+        assertEquals(2, encoder.getRowCount());
+        assertEquals(2, encoder.getRowEnd(0));
+        assertEquals(9, encoder.getRowEnd(1));
+        assertEquals("a\n\"b\"\"c\"\n", encoder.takeContents());
+    }
+
+    private static String encodeRow(String delimiter, String... cells) {
+        CsvRowEncoder encoder = new CsvRowEncoder(delimiter, ";");
+        for(int i = 0; i < cells.length - 1; i++) {
+            encoder.appendCell(cells[i]);
+        }
+        encoder.appendLastCell(cells[cells.length - 1]);
+        encoder.endRow();
+        return encoder.takeContents();
+    }
+
+    private static String randomCell(Random random) {
+        StringBuilder cell = new StringBuilder();
+        int length = random.nextInt(6);
+        for(int i = 0; i < length; i++) {
+            cell.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return cell.toString();
+    }
+
+    /**
+     * Split a row, ended by a line break, into cells. A cell that starts with a double quote ends at the next double
+     * quote that is not doubled; any other cell ends at the first occurrence of the delimiter or at the line break.
+     */
+    private static List<String> parseRow(String row, String delimiter) {
+        List<String> cells = new ArrayList<>();
+        int i = 0;
+        while(true) {
+            StringBuilder cell = new StringBuilder();
+            if(row.charAt(i) == '"') {
+                for(i++; !(row.charAt(i) == '"' && row.charAt(i + 1) != '"'); i++) {
+                    if(row.charAt(i) == '"') {
+                        i++;
+                    }
+                    cell.append(row.charAt(i));
+                }
+                i++;
+            } else {
+                while(!row.startsWith(delimiter, i) && row.charAt(i) != '\n') {
+                    cell.append(row.charAt(i++));
+                }
+            }
+            cells.add(cell.toString());
+            if(row.startsWith(delimiter, i)) {
+                i += delimiter.length();
+            } else {
+                assertEquals("Row " + row + " continues after a cell at " + i, Arrays.asList('\n', row.length() - 1),
+                        Arrays.asList(row.charAt(i), i));
+                return cells;
+            }
+        }
+    }
+}
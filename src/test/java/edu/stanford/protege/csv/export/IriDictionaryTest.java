@@ -0,0 +1,137 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link IriDictionary} replaces the references written by renderers with ids assigned in output order,
+ * so that the output is the same however the rows are split into blocks, and that it keeps the row ends of the
+ * encoder right when the ids are shorter than the references they replace
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class IriDictionaryTest {
+    private static final String NS = "http://example.org/dictionary#";
+    private static final int RUNS = 200;
+
+    @Test
+    public void assignsIdsInOutputOrder() throws IOException {
+        IriDictionary dictionary = new IriDictionary();
+        IriDictionary.References references = new IriDictionary.References();
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        appendRow(encoder, references, "b", "a", "b");
+        dictionary.resolve(encoder, references.take());
+        assertEquals("0,1,0\n", encoder.takeContents());
+        appendRow(encoder, references, "c", "a");
+        dictionary.resolve(encoder, references.take());
+        assertEquals("2,1\n", encoder.takeContents());
+        StringWriter writer = new StringWriter();
+        dictionary.write(writer, ",", true);
+        assertEquals("Id,IRI\n0," + NS + "b\n1," + NS + "a\n2," + NS + "c\n", writer.toString());
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void numbersReferencesAfreshAfterTake() {
+        IriDictionary.References references = new IriDictionary.References();
+        String first = references.get(iri("a"));
+        assertEquals(first, references.get(iri("a")));
+        assertEquals(Arrays.asList(iri("a")), references.take());
+        assertEquals(first, references.get(iri("b")));
+        assertEquals(Arrays.asList(iri("b")), references.take());
+    }
+
+    @Test
+    public void replacesReferencesInQuotedCells() {
+        IriDictionary dictionary = new IriDictionary();
+        IriDictionary.References references = new IriDictionary.References();
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        encoder.appendCell("say \"" + references.get(iri("a")) + "\"");
+        encoder.appendLastCell(references.get(iri("b")));
+        encoder.endRow();
+        encoder.appendLastCell(references.get(iri("a")));
+        encoder.endRow();
+        dictionary.resolve(encoder, references.take());
+        assertEquals(2, encoder.getRowCount());
+        assertEquals(14, encoder.getRowEnd(0));
+        assertEquals(16, encoder.getRowEnd(1));
+        assertEquals("\"say \"\"0\"\"\",1\n0\n", encoder.takeContents());
+    }
+
+    @Test
+    public void writesSameOutputForAnyBlockSize() {
+        Random random = new Random(13);
+        for(int run = 0; run < RUNS; run++) {
+            List<String[]> rows = new ArrayList<>();
+            for(int i = 0; i < 20; i++) {
+                String[] row = new String[1 + random.nextInt(4)];
+                for(int j = 0; j < row.length; j++) {
+                    row[j] = Integer.toString(random.nextInt(15));
+                }
+                rows.add(row);
+            }
+            String expected = numberByFirstOccurrence(rows);
+            for(int blockSize = 1; blockSize <= rows.size(); blockSize++) {
+                assertEquals("Run " + run + ", block size " + blockSize, expected, writeInBlocks(rows, blockSize));
+            }
+        }
+    }
+
+    /**
+     * Write the given rows with each name replaced by the number of names that first occur before it
+     */
+    private static String numberByFirstOccurrence(List<String[]> rows) {
+        List<String> names = new ArrayList<>();
+        StringBuilder output = new StringBuilder();
+        for(String[] row : rows) {
+            for(int i = 0; i < row.length; i++) {
+                if(!names.contains(row[i])) {
+                    names.add(row[i]);
+                }
+                output.append(names.indexOf(row[i])).append(i < row.length - 1 ? "," : "\n");
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Render the given rows in blocks of the given size, each with its own references, and resolve them in order
+     */
+    private static String writeInBlocks(List<String[]> rows, int blockSize) {
+        IriDictionary dictionary = new IriDictionary();
+        StringBuilder output = new StringBuilder();
+        for(int start = 0; start < rows.size(); start += blockSize) {
+            IriDictionary.References references = new IriDictionary.References();
+            CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+            for(String[] row : rows.subList(start, Math.min(rows.size(), start + blockSize))) {
+                appendRow(encoder, references, row);
+            }
+            dictionary.resolve(encoder, references.take());
+            output.append(encoder.takeContents());
+        }
+        return output.toString();
+    }
+
+    private static void appendRow(CsvRowEncoder encoder, IriDictionary.References references, String... names) {
+        for(int i = 0; i < names.length - 1; i++) {
+            encoder.appendCell(references.get(iri(names[i])));
+        }
+        encoder.appendLastCell(references.get(iri(names[names.length - 1])));
+        encoder.endRow();
+    }
+
+    private static IRI iri(String name) {
+        return IRI.create(NS + name);
+    }
+}
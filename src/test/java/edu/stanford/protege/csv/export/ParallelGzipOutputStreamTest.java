@@ -0,0 +1,148 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the multi-member output of {@link ParallelGzipOutputStream} decodes with {@link GZIPInputStream} into
+ * the bytes written, whether they are written in pieces that are smaller than, equal to or larger than a block, and
+ * whether the stream is flushed between writes
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ParallelGzipOutputStreamTest {
+    private static final int BLOCK_SIZE = 1000;
+    private static final int[] THREADS = {1, 2, 4};
+    private static final int RUNS = 20;
+
+    @Test
+    public void decodesToBytesWritten() throws IOException {
+        Random random = new Random(1952);
+        for(int threads : THREADS) {
+            for(int run = 0; run < RUNS; run++) {
+                byte[] data = randomText(random, random.nextInt(20 * BLOCK_SIZE));
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try(OutputStream out = new ParallelGzipOutputStream(compressed, threads, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+                    writeInPieces(out, data, random);
+                }
+                assertArrayEquals("Threads " + threads + ", run " + run, data, gunzip(compressed.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void writesOneMemberPerBlock() throws IOException {
+        byte[] data = randomText(new Random(0), 3 * BLOCK_SIZE + 1);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try(OutputStream out = new ParallelGzipOutputStream(compressed, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+            out.write(data);
+        }
+        assertEquals(4, countMembers(compressed.toByteArray()));
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void closesUnderlyingStreamOnce() throws IOException {
+        int[] closes = {0};
+        OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closes[0]++;
+            }
+        }, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+        out.write(1);
+        out.close();
+        out.close();
+        assertEquals(1, closes[0]);
+    }
+
+    /**
+     * Write the given bytes in pieces of random length, using each of the write methods in turn, and flush now and then
+     */
+    private static void writeInPieces(OutputStream out, byte[] data, Random random) throws IOException {
+        int off = 0;
+        while(off < data.length) {
+            int len = Math.min(data.length - off, 1 + random.nextInt(3 * BLOCK_SIZE));
+            switch(random.nextInt(3)) {
+                case 0:
+                    out.write(data[off]);
+                    len = 1;
+                    break;
+                case 1:
+                    out.write(data, off, len);
+                    break;
+                default:
+                    out.write(data, off, len);
+                    out.flush();
+            }
+            off += len;
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        if(compressed.length == 0) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Count the gzip members of a stream by inflating each one on its own to find where it ends
+     */
+    private static int countMembers(byte[] compressed) throws IOException {
+        int members = 0;
+        for(int off = 0; off < compressed.length; members++) {
+            assertTrue("Member " + members + " starts with the gzip magic number",
+                    (compressed[off] & 0xFF) == 0x1F && (compressed[off + 1] & 0xFF) == 0x8B);
+            off += memberLength(compressed, off);
+        }
+        return members;
+    }
+
+    private static int memberLength(byte[] compressed, int off) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            int headerLength = 10; // members are written by GZIPOutputStream, without optional header fields
+            inflater.setInput(compressed, off + headerLength, compressed.length - off - headerLength);
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while(!inflater.finished()) {
+                inflater.inflate(buffer);
+            }
+            return headerLength + (compressed.length - off - headerLength - inflater.getRemaining()) + 8; // CRC and size
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] randomText(Random random, int length) {
+        byte[] data = new byte[length];
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(4) == 0 ? 'a' + random.nextInt(26) : "entity,label\n".charAt(i % 13));
+        }
+        return data;
+    }
+}
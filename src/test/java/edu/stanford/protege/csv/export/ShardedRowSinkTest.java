@@ -0,0 +1,113 @@
+package edu.stanford.protege.csv.export;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ShardedRowSink} rolls over to a new shard once the current one holds the maximum number of rows,
+ * repeats the header in each shard, and writes its manifest only once it is committed
+ *
+ * @author Rafael Gonçalves <br>
+ * Center for Biomedical Informatics Research <br>
+ * Stanford University
+ */
+public class ShardedRowSinkTest {
+    private static final String HEADER = "Entity,Label\n";
+    private File directory, outputFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sharded-row-sink-test").toFile();
+        outputFile = new File(directory, "export.csv");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void rollsOverWhenShardIsFull() throws IOException {
+        ShardedRowSink sink = newSink(3);
+        sink.writeRows(encodeRows(0, 4));
+        sink.writeRows(encodeRows(4, 7));
+        sink.writeTrailer("\n\ncustom text\n");
+        sink.commit();
+        assertEquals(HEADER + "r0\nr1\nr2\n", read("export-00000.csv"));
+        assertEquals(HEADER + "r3\nr4\nr5\n", read("export-00001.csv"));
+        assertEquals(HEADER + "r6\n\n\ncustom text\n", read("export-00002.csv"));
+        assertEquals(Arrays.asList("export-00000.csv\t3", "export-00001.csv\t3", "export-00002.csv\t1"), readManifest(sink));
+    }
+
+    @Test
+    public void writesManifestOnlyAfterCommit() throws IOException {
+        ShardedRowSink sink = newSink(2);
+        sink.writeRows(encodeRows(0, 5));
+        assertFalse(sink.getManifestFile().exists());
+        sink.commit();
+        assertTrue(sink.getManifestFile().exists());
+        assertEquals(3, readManifest(sink).size());
+    }
+
+    @Test
+    public void writesOneShardWithoutLimits() throws IOException {
+        ShardedRowSink sink = newSink(0);
+        sink.writeRows(encodeRows(0, 5));
+        sink.commit();
+        assertEquals(HEADER + "r0\nr1\nr2\nr3\nr4\n", read("export-00000.csv"));
+        assertEquals(Collections.singletonList("export-00000.csv\t5"), readManifest(sink));
+    }
+
+    @Test
+    public void deletesShardsWithoutManifestWhenDiscarded() throws IOException {
+        ShardedRowSink sink = newSink(2);
+        sink.writeRows(encodeRows(0, 5));
+        sink.discard();
+        assertFalse(sink.getManifestFile().exists());
+        String[] files = directory.list();
+        assertEquals("Files left: " + Arrays.toString(files), 0, files.length);
+    }
+
+    private ShardedRowSink newSink(long maxShardRows) {
+        return new ShardedRowSink(outputFile, HEADER, maxShardRows, 0, 2,
+                (file, byteCounter) -> new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encode the rows {@code r<from>} up to, but not including, {@code r<to>}
+     */
+    private static CsvRowEncoder encodeRows(int from, int to) {
+        CsvRowEncoder encoder = new CsvRowEncoder(",", ";");
+        for(int i = from; i < to; i++) {
+            encoder.appendLastCell("r" + i);
+            encoder.endRow();
+        }
+        return encoder;
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(directory, name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readManifest(ShardedRowSink sink) throws IOException {
+        return Files.readAllLines(sink.getManifestFile().toPath(), StandardCharsets.UTF_8);
+    }
+}